@@ -0,0 +1,271 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.os.Debug;
+import android.support.v7.widget.RecyclerView;
+import android.test.AndroidTestCase;
+import android.util.Log;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.widget.AbsListView;
+
+/*
+    Binds a long forecast through the ForecastAdapter the way a fast fling would, so the cost of
+    a bind can be compared against the 16ms frame budget, and counts what a bind allocates.
+ */
+public class TestForecastAdapter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastAdapter.class.getSimpleName();
+
+    static final int FORECAST_DAYS = 365;
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // Roughly how many new rows a fast fling brings on screen each frame
+    static final int ROWS_PER_FRAME = 4;
+    static final int SCROLL_PASSES = 5;
+    static final long FRAME_BUDGET_NANOS = 16000000L;
+
+    private ContextThemeWrapper mThemedContext;
+    private RecyclerView mRecyclerView;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mThemedContext = new ContextThemeWrapper(mContext, R.style.AppTheme);
+        mRecyclerView = new RecyclerView(mThemedContext);
+    }
+
+    static ForecastModel createLongForecast(Context context, long startDate, int days) {
+        long[] dates = new long[days];
+        int[] weatherIds = new int[days];
+        float[] highs = new float[days];
+        float[] lows = new float[days];
+        int[] conditions = {200, 300, 500, 511, 600, 701, 781, 800, 801, 802};
+        for (int i = 0; i < days; i++) {
+            dates[i] = startDate + i * DAY_IN_MILLIS;
+            // Derive the weather from the date so the same day looks the same in every forecast
+            int day = (int) (dates[i] / DAY_IN_MILLIS);
+            weatherIds[i] = conditions[day % conditions.length];
+            highs[i] = 20.5f + (day % 10);
+            lows[i] = 10.25f - (day % 7);
+        }
+        return new ForecastModel(context, dates, weatherIds, highs, lows, "64.7488", "-147.353");
+    }
+
+    ForecastAdapter createAdapter() {
+        return new ForecastAdapter(mThemedContext, new ForecastAdapter.ForecastAdapterOnClickHandler() {
+            @Override
+            public void onClick(Long date, ForecastAdapter.ForecastAdapterViewHolder vh) {
+            }
+        }, new View(mThemedContext), AbsListView.CHOICE_MODE_NONE);
+    }
+
+    public void testFastScrollFrameTime() {
+        ForecastAdapter adapter = createAdapter();
+        adapter.swapForecast(createLongForecast(mThemedContext, System.currentTimeMillis(), FORECAST_DAYS));
+        assertEquals(FORECAST_DAYS, adapter.getItemCount());
+
+        // A fling recycles a small pool of holders, so bind into the same few rows over and over
+        ForecastAdapter.ForecastAdapterViewHolder[] holders =
+                new ForecastAdapter.ForecastAdapterViewHolder[ROWS_PER_FRAME];
+        for (int i = 0; i < ROWS_PER_FRAME; i++) {
+            holders[i] = adapter.onCreateViewHolder(mRecyclerView, adapter.getItemViewType(1));
+        }
+
+        long worstFrame = 0;
+        long totalNanos = 0;
+        int frames = 0;
+        for (int pass = 0; pass < SCROLL_PASSES; pass++) {
+            for (int position = 1; position + ROWS_PER_FRAME <= FORECAST_DAYS; position += ROWS_PER_FRAME) {
+                long start = System.nanoTime();
+                for (int row = 0; row < ROWS_PER_FRAME; row++) {
+                    adapter.onBindViewHolder(holders[row], position + row);
+                }
+                long frame = System.nanoTime() - start;
+                worstFrame = Math.max(worstFrame, frame);
+                totalNanos += frame;
+                frames++;
+            }
+        }
+
+        Log.d(LOG_TAG, "Fast scroll over " + FORECAST_DAYS + " days: " +
+                (totalNanos / frames / 1000) + "us/frame average, " +
+                (worstFrame / 1000) + "us worst frame, " +
+                (totalNanos / (frames * ROWS_PER_FRAME) / 1000) + "us/bind");
+        assertTrue("Error: binding a frame's worth of rows took longer than a frame",
+                totalNanos / frames < FRAME_BUDGET_NANOS);
+    }
+
+    static final int ALLOCATION_BINDS = 100;
+
+    /*
+        Binding used to format the date, description and temperatures (reading the units
+        preference each time) on every bind.  Count the allocations of that work next to the
+        allocations of a bind from the preformatted model.
+     */
+    @SuppressWarnings("deprecation")
+    public void testBindAllocations() {
+        ForecastAdapter adapter = createAdapter();
+        ForecastModel forecast = createLongForecast(mThemedContext, System.currentTimeMillis(), FORECAST_DAYS);
+        adapter.swapForecast(forecast);
+        ForecastAdapter.ForecastAdapterViewHolder holder =
+                adapter.onCreateViewHolder(mRecyclerView, adapter.getItemViewType(1));
+
+        // Warm up so class loading and resource caches don't show up in the counts
+        for (int i = 1; i <= ALLOCATION_BINDS; i++) {
+            adapter.onBindViewHolder(holder, i);
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 1; i <= ALLOCATION_BINDS; i++) {
+            int weatherId = forecast.weatherIds[i];
+            Utility.getFriendlyDayString(mThemedContext, forecast.dates[i], false);
+            String description = Utility.getStringForWeatherCondition(mThemedContext, weatherId);
+            mThemedContext.getString(R.string.a11y_forecast, description);
+            String high = Utility.formatTemperature(mThemedContext, forecast.highs[i]);
+            mThemedContext.getString(R.string.a11y_high_temp, high);
+            String low = Utility.formatTemperature(mThemedContext, forecast.lows[i]);
+            mThemedContext.getString(R.string.a11y_low_temp, low);
+        }
+        Debug.stopAllocCounting();
+        int formattingAllocations = Debug.getThreadAllocCount();
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 1; i <= ALLOCATION_BINDS; i++) {
+            adapter.onBindViewHolder(holder, i);
+        }
+        Debug.stopAllocCounting();
+        int bindAllocations = Debug.getThreadAllocCount();
+
+        Log.d(LOG_TAG, "Allocations per bind: " + (formattingAllocations / ALLOCATION_BINDS) +
+                " formatting while binding, " + (bindAllocations / ALLOCATION_BINDS) +
+                " binding preformatted rows");
+        assertTrue("Error: binding preformatted rows should allocate less than formatting them",
+                bindAllocations < formattingAllocations);
+    }
+
+    static final int SYNC_DAYS = 14;
+    static final int CHANGED_DAY = 5;
+
+    /*
+        A sync the next day drops yesterday, adds a new last day and here also changes one
+        temperature.  Only those rows (and the first one, which gets the today layout) should be
+        notified, and a selected day has to stay selected at its new position.
+     */
+    public void testIncrementalUpdate() {
+        ForecastAdapter adapter = createAdapter();
+        CountingObserver observer = new CountingObserver();
+        adapter.registerAdapterDataObserver(observer);
+        ItemChoiceManager icm = new ItemChoiceManager(adapter);
+        icm.setChoiceMode(AbsListView.CHOICE_MODE_SINGLE);
+
+        long today = System.currentTimeMillis();
+        ForecastModel before = createLongForecast(mThemedContext, today, SYNC_DAYS);
+        adapter.swapForecast(before);
+        assertEquals("Error: the first forecast should be a full data set change",
+                1, observer.changed);
+
+        // Select a day the way a click would
+        int selected = SYNC_DAYS / 2;
+        icm.mCheckStates.put(selected, true);
+        icm.mCheckedIdStates.put(adapter.getItemId(selected), selected);
+
+        ForecastModel shifted = createLongForecast(mThemedContext, today + DAY_IN_MILLIS, SYNC_DAYS);
+        float[] highs = shifted.highs.clone();
+        highs[CHANGED_DAY] += 3;
+        ForecastModel after = new ForecastModel(mThemedContext, shifted.dates, shifted.weatherIds,
+                highs, shifted.lows, shifted.coordLat, shifted.coordLong);
+        after.diff = ForecastDiff.compute(before, after);
+        Log.d(LOG_TAG, "Sync diff: " + after.diff);
+
+        adapter.swapForecast(after);
+        assertEquals("Error: the diff shouldn't fall back to a full data set change",
+                1, observer.changed);
+        assertEquals("Error: yesterday should have been removed", 1, observer.removed);
+        assertEquals("Error: the new last day should have been inserted", 1, observer.inserted);
+        // The new first row and the day whose temperature changed
+        assertEquals("Error: only the changed rows should be rebound", 2, observer.itemsChanged);
+        assertEquals("Error: the selection should follow its day",
+                selected - 1, icm.getSelectedItemPosition());
+
+        // Loading the same data again has nothing to notify
+        ForecastModel same = new ForecastModel(mThemedContext, after.dates, after.weatherIds,
+                after.highs, after.lows, after.coordLat, after.coordLong);
+        same.diff = ForecastDiff.compute(after, same);
+        assertTrue("Error: an identical forecast should produce an empty diff", same.diff.isEmpty());
+
+        // A diff against a forecast the adapter no longer shows can't be replayed
+        ForecastModel stale = createLongForecast(mThemedContext, today, SYNC_DAYS);
+        stale.diff = ForecastDiff.compute(before, stale);
+        adapter.swapForecast(stale);
+        assertEquals("Error: a stale diff should fall back to a full data set change",
+                2, observer.changed);
+    }
+
+    /*
+        When the new first day also changed, its row should only be notified once.
+     */
+    public void testFirstRowIsChangedOnce() {
+        long today = System.currentTimeMillis();
+        ForecastModel before = createLongForecast(mThemedContext, today, SYNC_DAYS);
+        ForecastModel shifted = createLongForecast(mThemedContext, today + DAY_IN_MILLIS, SYNC_DAYS);
+        float[] highs = shifted.highs.clone();
+        highs[0] += 3;
+        ForecastModel after = new ForecastModel(mThemedContext, shifted.dates, shifted.weatherIds,
+                highs, shifted.lows, shifted.coordLat, shifted.coordLong);
+
+        ForecastDiff diff = ForecastDiff.compute(before, after);
+        Log.d(LOG_TAG, "Sync diff: " + diff);
+        assertEquals("Error: the first row should only be changed once", 1, diff.getChangedCount());
+
+        CountingObserver observer = new CountingObserver();
+        ForecastAdapter adapter = createAdapter();
+        adapter.registerAdapterDataObserver(observer);
+        diff.dispatchTo(adapter);
+        assertEquals("Error: the first row should only be rebound once", 1, observer.itemsChanged);
+    }
+
+    static class CountingObserver extends RecyclerView.AdapterDataObserver {
+        int changed;
+        int itemsChanged;
+        int inserted;
+        int removed;
+
+        @Override
+        public void onChanged() {
+            changed++;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            itemsChanged += itemCount;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            inserted += itemCount;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            removed += itemCount;
+        }
+    }
+}
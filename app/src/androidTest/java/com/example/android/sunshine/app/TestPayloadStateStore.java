@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.test.AndroidTestCase;
+
+public class TestPayloadStateStore extends AndroidTestCase {
+
+    static final String TEST_CONSUMER = "test_consumer";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        PayloadStateStore.getInstance(mContext).forget(TEST_CONSUMER);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        PayloadStateStore.getInstance(mContext).forget(TEST_CONSUMER);
+        super.tearDown();
+    }
+
+    public void testUnchangedPayloadIsSkipped() {
+        PayloadStateStore store = PayloadStateStore.getInstance(mContext);
+        int avoidedBefore = store.getAvoidedToday(TEST_CONSUMER);
+
+        assertFalse("Error: nothing was delivered yet", store.isDelivered(TEST_CONSUMER, 42));
+        // 0 is also what a missing hash reads as
+        assertFalse("Error: nothing was delivered yet", store.isDelivered(TEST_CONSUMER, 0));
+        assertEquals("Error: an update that went through shouldn't be counted as avoided",
+                avoidedBefore, store.getAvoidedToday(TEST_CONSUMER));
+
+        store.setDelivered(TEST_CONSUMER, 42);
+        assertTrue("Error: the same payload should be skipped", store.isDelivered(TEST_CONSUMER, 42));
+        assertTrue("Error: the same payload should be skipped", store.isDelivered(TEST_CONSUMER, 42));
+        assertEquals("Error: each skipped update should be counted",
+                avoidedBefore + 2, store.getAvoidedToday(TEST_CONSUMER));
+
+        assertFalse("Error: a different payload should go through",
+                store.isDelivered(TEST_CONSUMER, 43));
+
+        store.forget(TEST_CONSUMER);
+        assertFalse("Error: a forgotten payload should go through",
+                store.isDelivered(TEST_CONSUMER, 42));
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.os.Debug;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/*
+    Checks the Utility helpers that the list, the widgets and the sync adapter call for every
+    row, and times them against the way they used to be computed.
+ */
+public class TestUtility extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestUtility.class.getSimpleName();
+
+    static final int BENCHMARK_CALLS = 10000;
+
+    private SharedPreferences mPrefs;
+    private String mSavedUnits;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mSavedUnits = mPrefs.getString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mContext.getString(R.string.pref_units_key), mSavedUnits).commit();
+        SettingsSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    // How isMetric read the preference before the settings snapshot
+    private boolean readIsMetric() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        return prefs.getString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(R.string.pref_units_metric))
+                .equals(mContext.getString(R.string.pref_units_metric));
+    }
+
+    private String readPreferredLocation() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        return prefs.getString(mContext.getString(R.string.pref_location_key),
+                mContext.getString(R.string.pref_location_default));
+    }
+
+    public void testSettingsSnapshotFollowsPreferences() {
+        assertEquals("Error: the snapshot doesn't match the stored units",
+                readIsMetric(), Utility.isMetric(mContext));
+        assertEquals("Error: the snapshot doesn't match the stored location",
+                readPreferredLocation(), Utility.getPreferredLocation(mContext));
+
+        final boolean wasMetric = Utility.isMetric(mContext);
+        String newUnits = mContext.getString(wasMetric ?
+                R.string.pref_units_imperial : R.string.pref_units_metric);
+        mPrefs.edit().putString(mContext.getString(R.string.pref_units_key), newUnits).commit();
+
+        // The change listener runs on the main thread, so give it a moment
+        new PollingCheck(3000) {
+            @Override
+            protected boolean check() {
+                return Utility.isMetric(mContext) != wasMetric;
+            }
+        }.run();
+        assertEquals("Error: the snapshot didn't pick up the new units",
+                readIsMetric(), Utility.isMetric(mContext));
+    }
+
+    public void testSettingsSnapshotBenchmark() {
+        // Warm up both paths
+        Utility.isMetric(mContext);
+        readIsMetric();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            readIsMetric();
+            readPreferredLocation();
+        }
+        long prefsNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            Utility.isMetric(mContext);
+            Utility.getPreferredLocation(mContext);
+        }
+        long snapshotNanos = System.nanoTime() - start;
+
+        Log.d(LOG_TAG, "isMetric + getPreferredLocation: " +
+                (prefsNanos / BENCHMARK_CALLS) + "ns/call reading preferences, " +
+                (snapshotNanos / BENCHMARK_CALLS) + "ns/call from the snapshot");
+        assertTrue("Error: reading the snapshot should be faster than reading the preferences",
+                snapshotNanos < prefsNanos);
+    }
+
+    // Covers the whole table plus ids on either side of it
+    static final int FIRST_CHECKED_ID = -1;
+    static final int LAST_CHECKED_ID = 1000;
+
+    public void testWeatherConditionTableParity() {
+        String artPack = SettingsSnapshot.get(mContext).artPack;
+        for (int weatherId = FIRST_CHECKED_ID; weatherId <= LAST_CHECKED_ID; weatherId++) {
+            assertEquals("Error: wrong icon for condition " + weatherId,
+                    WeatherConditions.resolveIconResource(weatherId),
+                    Utility.getIconResourceForWeatherCondition(weatherId));
+            assertEquals("Error: wrong art for condition " + weatherId,
+                    WeatherConditions.resolveArtResource(weatherId),
+                    Utility.getArtResourceForWeatherCondition(weatherId));
+            assertEquals("Error: wrong image url for condition " + weatherId,
+                    WeatherConditions.resolveImageUrl(weatherId),
+                    Utility.getImageUrlForWeatherCondition(weatherId));
+            assertEquals("Error: wrong art url for condition " + weatherId,
+                    WeatherConditions.resolveArtUrl(artPack, weatherId),
+                    Utility.getArtUrlForWeatherCondition(mContext, weatherId));
+            assertEquals("Error: wrong description for condition " + weatherId,
+                    WeatherConditions.resolveDescription(mContext, weatherId),
+                    Utility.getStringForWeatherCondition(mContext, weatherId));
+        }
+
+        // A few well known ones, so the test doesn't only compare the table with itself
+        assertEquals(R.drawable.ic_storm, Utility.getIconResourceForWeatherCondition(781));
+        assertEquals(R.drawable.art_clouds, Utility.getArtResourceForWeatherCondition(804));
+        assertEquals(-1, Utility.getIconResourceForWeatherCondition(100));
+        assertEquals(mContext.getString(R.string.condition_511),
+                Utility.getStringForWeatherCondition(mContext, 511));
+        assertEquals(mContext.getString(R.string.condition_unknown, 250),
+                Utility.getStringForWeatherCondition(mContext, 250));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testWeatherConditionTableBenchmark() {
+        String artPack = SettingsSnapshot.get(mContext).artPack;
+        // Builds the table outside of the timed loop
+        Utility.getStringForWeatherCondition(mContext, 800);
+
+        long start = System.nanoTime();
+        for (int weatherId = WeatherConditions.MIN_WEATHER_ID;
+             weatherId <= WeatherConditions.MAX_WEATHER_ID; weatherId++) {
+            WeatherConditions.resolveIconResource(weatherId);
+            WeatherConditions.resolveArtResource(weatherId);
+            WeatherConditions.resolveImageUrl(weatherId);
+            WeatherConditions.resolveArtUrl(artPack, weatherId);
+            WeatherConditions.resolveDescription(mContext, weatherId);
+        }
+        long chainNanos = System.nanoTime() - start;
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        start = System.nanoTime();
+        for (int weatherId = WeatherConditions.MIN_WEATHER_ID;
+             weatherId <= WeatherConditions.MAX_WEATHER_ID; weatherId++) {
+            Utility.getIconResourceForWeatherCondition(weatherId);
+            Utility.getArtResourceForWeatherCondition(weatherId);
+            Utility.getImageUrlForWeatherCondition(weatherId);
+            Utility.getArtUrlForWeatherCondition(mContext, weatherId);
+            Utility.getStringForWeatherCondition(mContext, weatherId);
+        }
+        long tableNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int tableAllocations = Debug.getThreadAllocCount();
+
+        int ids = WeatherConditions.MAX_WEATHER_ID - WeatherConditions.MIN_WEATHER_ID + 1;
+        Log.d(LOG_TAG, "Condition lookups: " + (chainNanos / ids) + "ns/id through the chains, " +
+                (tableNanos / ids) + "ns/id from the table, " + tableAllocations +
+                " allocations for the table lookups");
+        assertTrue("Error: the table lookups should be faster than the chains",
+                tableNanos < chainNanos);
+        assertEquals("Error: the table lookups shouldn't allocate", 0, tableAllocations);
+    }
+
+    static final int DATE_FORMAT_CALLS = 100000;
+    static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    // The friendly day string switches format a week out, so cover both sides of that
+    static final int FORMATTED_DAYS = 14;
+
+    // getFriendlyDayString as it was before the formatters were cached
+    private String legacyFriendlyDayString(long dateInMillis) {
+        Time time = new Time();
+        time.setToNow();
+        long currentTime = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(currentTime, time.gmtoff);
+        if ( julianDay < currentJulianDay + 7 ) {
+            return legacyDayName(dateInMillis);
+        } else {
+            SimpleDateFormat shortenedDateFormat = new SimpleDateFormat("EEE MMM dd");
+            return shortenedDateFormat.format(dateInMillis);
+        }
+    }
+
+    private String legacyDayName(long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return mContext.getString(R.string.today);
+        } else if ( julianDay == currentJulianDay +1 ) {
+            return mContext.getString(R.string.tomorrow);
+        } else {
+            Time time = new Time();
+            time.setToNow();
+            SimpleDateFormat dayFormat = new SimpleDateFormat("EEEE");
+            return dayFormat.format(dateInMillis);
+        }
+    }
+
+    private String legacyFormattedMonthDay(long dateInMillis) {
+        Time time = new Time();
+        time.setToNow();
+        SimpleDateFormat dbDateFormat = new SimpleDateFormat(Utility.DATE_FORMAT);
+        SimpleDateFormat monthDayFormat = new SimpleDateFormat("MMMM dd");
+        return monthDayFormat.format(dateInMillis);
+    }
+
+    public void testCachedDateFormatsMatch() {
+        long today = System.currentTimeMillis();
+        for (int day = -1; day < FORMATTED_DAYS; day++) {
+            long date = today + day * DAY_IN_MILLIS;
+            assertEquals("Error: friendly day string differs for day " + day,
+                    legacyFriendlyDayString(date), Utility.getFriendlyDayString(mContext, date, false));
+            assertEquals("Error: day name differs for day " + day,
+                    legacyDayName(date), Utility.getDayName(mContext, date));
+            assertEquals("Error: month day differs for day " + day,
+                    legacyFormattedMonthDay(date), Utility.getFormattedMonthDay(mContext, date));
+        }
+
+        // Dropping the cache must not change the output either
+        DateFormatCache.invalidate();
+        long nextWeek = today + 8 * DAY_IN_MILLIS;
+        assertEquals("Error: friendly day string differs after invalidating the cache",
+                legacyFriendlyDayString(nextWeek), Utility.getFriendlyDayString(mContext, nextWeek, false));
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testCachedDateFormatsBenchmark() {
+        long today = System.currentTimeMillis();
+        // Warm up both paths
+        legacyFriendlyDayString(today);
+        Utility.getFriendlyDayString(mContext, today, false);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < DATE_FORMAT_CALLS; i++) {
+            legacyFriendlyDayString(today + (i % FORMATTED_DAYS) * DAY_IN_MILLIS);
+        }
+        long legacyNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int legacyAllocations = Debug.getThreadAllocCount();
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        start = System.nanoTime();
+        for (int i = 0; i < DATE_FORMAT_CALLS; i++) {
+            Utility.getFriendlyDayString(mContext, today + (i % FORMATTED_DAYS) * DAY_IN_MILLIS, false);
+        }
+        long cachedNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int cachedAllocations = Debug.getThreadAllocCount();
+
+        Log.d(LOG_TAG, DATE_FORMAT_CALLS + " friendly day strings: " +
+                (legacyNanos / 1000000) + "ms and " + legacyAllocations + " allocations creating " +
+                "the formatters on each call, " + (cachedNanos / 1000000) + "ms and " +
+                cachedAllocations + " allocations with the cached formatters");
+        assertTrue("Error: the cached formatters should be faster", cachedNanos < legacyNanos);
+        assertTrue("Error: the cached formatters should allocate less",
+                cachedAllocations < legacyAllocations);
+    }
+
+    // Western digits, a comma locale and locales with their own digits
+    static final Locale[] FORMAT_LOCALES = {Locale.US, Locale.GERMANY, Locale.FRANCE,
+            new Locale("ar", "EG"), new Locale("fa", "IR"), new Locale("hi", "IN")};
+    static final double[] EDGE_TEMPERATURES = {0.0, -0.0, -0.2, -0.5, 0.5, 1.5, 2.5, -2.5,
+            0.49999999999999994, 99.5, -40.0, 1e16, Double.NaN, Double.POSITIVE_INFINITY};
+    static final float[] EDGE_DEGREES = {0f, 22.5f, 67.5f, 112.5f, 157.5f, 202.5f, 247.5f,
+            292.5f, 337.5f, 359.99f, 360f, -1f, 22.499998f, Float.NaN};
+
+    private void setUnits(int unitsId) {
+        mPrefs.edit().putString(mContext.getString(R.string.pref_units_key),
+                mContext.getString(unitsId)).commit();
+        SettingsSnapshot.refresh(mContext);
+    }
+
+    // formatTemperature as it was before WeatherFormatter
+    private String legacyFormatTemperature(double temperature) {
+        if (!readIsMetric()) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(mContext.getString(R.string.format_temperature), temperature);
+    }
+
+    private String legacyFormatWind(float windSpeed, float degrees) {
+        int windFormat;
+        if (readIsMetric()) {
+            windFormat = R.string.format_wind_kmh;
+        } else {
+            windFormat = R.string.format_wind_mph;
+            windSpeed = .621371192237334f * windSpeed;
+        }
+        String direction = "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            direction = "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            direction = "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            direction = "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            direction = "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            direction = "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            direction = "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            direction = "NW";
+        }
+        return String.format(mContext.getString(windFormat), windSpeed, direction);
+    }
+
+    private void checkFormatParity() {
+        for (double temperature = -60; temperature <= 60; temperature += 0.05) {
+            assertEquals("Error: temperature " + temperature + " formatted differently",
+                    legacyFormatTemperature(temperature), Utility.formatTemperature(mContext, temperature));
+        }
+        for (double temperature : EDGE_TEMPERATURES) {
+            assertEquals("Error: temperature " + temperature + " formatted differently",
+                    legacyFormatTemperature(temperature), Utility.formatTemperature(mContext, temperature));
+        }
+        for (float speed = 0; speed <= 100; speed += 0.37f) {
+            for (float degrees = -10; degrees <= 370; degrees += 0.5f) {
+                assertEquals("Error: wind " + speed + " at " + degrees + " formatted differently",
+                        legacyFormatWind(speed, degrees), Utility.getFormattedWind(mContext, speed, degrees));
+            }
+        }
+        for (float degrees : EDGE_DEGREES) {
+            assertEquals("Error: wind at " + degrees + " formatted differently",
+                    legacyFormatWind(7.5f, degrees), Utility.getFormattedWind(mContext, 7.5f, degrees));
+        }
+    }
+
+    public void testWeatherFormatterParity() {
+        Locale savedLocale = Locale.getDefault();
+        try {
+            for (Locale locale : FORMAT_LOCALES) {
+                Locale.setDefault(locale);
+                setUnits(R.string.pref_units_metric);
+                checkFormatParity();
+                setUnits(R.string.pref_units_imperial);
+                checkFormatParity();
+            }
+        } finally {
+            Locale.setDefault(savedLocale);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testWeatherFormatterBenchmark() {
+        WeatherFormatter formatter = WeatherFormatter.get(mContext);
+        StringBuilder out = new StringBuilder(32);
+        // Warm up both paths
+        legacyFormatTemperature(21.5);
+        formatter.appendTemperature(out, 21.5);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            legacyFormatTemperature(i % 80 - 30.25);
+            legacyFormatWind(i % 50 + 0.5f, i % 360);
+        }
+        long legacyNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int legacyAllocations = Debug.getThreadAllocCount();
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_CALLS; i++) {
+            out.setLength(0);
+            formatter.appendTemperature(out, i % 80 - 30.25);
+            out.setLength(0);
+            formatter.appendWind(out, i % 50 + 0.5f, i % 360);
+        }
+        long formatterNanos = System.nanoTime() - start;
+        Debug.stopAllocCounting();
+        int formatterAllocations = Debug.getThreadAllocCount();
+
+        Log.d(LOG_TAG, BENCHMARK_CALLS + " temperatures and winds: " +
+                (legacyNanos / 1000000) + "ms and " + legacyAllocations + " allocations with " +
+                "String.format, " + (formatterNanos / 1000000) + "ms and " + formatterAllocations +
+                " allocations appending to a reused builder");
+        assertTrue("Error: the formatter should be faster than String.format",
+                formatterNanos < legacyNanos);
+        assertEquals("Error: appending to a reused builder shouldn't allocate",
+                0, formatterAllocations);
+    }
+}
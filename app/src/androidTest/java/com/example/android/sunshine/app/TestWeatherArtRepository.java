@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/*
+    Checks that the art repository serves every consumer from its caches.  This uses the Sunshine
+    art pack, which is bundled, so it doesn't depend on the network.
+ */
+public class TestWeatherArtRepository extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherArtRepository.class.getSimpleName();
+
+    static final int ICON_SIZE = 48;
+    static final int LARGE_ICON_SIZE = 96;
+
+    private SharedPreferences mPrefs;
+    private String mSavedArtPack;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String artPackKey = mContext.getString(R.string.pref_art_pack_key);
+        mSavedArtPack = mPrefs.getString(artPackKey, mContext.getString(R.string.pref_art_pack_sunshine));
+        mPrefs.edit().putString(artPackKey, mContext.getString(R.string.pref_art_pack_sunshine)).commit();
+        SettingsSnapshot.refresh(mContext);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mContext.getString(R.string.pref_art_pack_key), mSavedArtPack).commit();
+        SettingsSnapshot.refresh(mContext);
+        super.tearDown();
+    }
+
+    public void testBundledArtIsCachedPerSize() {
+        WeatherArtRepository repository = WeatherArtRepository.getInstance(mContext);
+        int fetchesBefore = repository.getNetworkFetchesToday();
+
+        Bitmap icon = repository.getArt(800, ICON_SIZE, ICON_SIZE);
+        assertNotNull("Error: no art for a clear sky", icon);
+        assertTrue("Error: the art doesn't fit in the size asked for",
+                icon.getWidth() <= ICON_SIZE && icon.getHeight() <= ICON_SIZE);
+        assertTrue("Error: the art should fill the size asked for in one direction",
+                icon.getWidth() == ICON_SIZE || icon.getHeight() == ICON_SIZE);
+
+        assertSame("Error: asking again for the same size should hit the memory cache",
+                icon, repository.getArt(800, ICON_SIZE, ICON_SIZE));
+        Bitmap largeIcon = repository.getArt(800, LARGE_ICON_SIZE, LARGE_ICON_SIZE);
+        assertNotSame("Error: each size should be scaled separately", icon, largeIcon);
+
+        assertNull("Error: there is no art for an unknown condition",
+                repository.getArt(100, ICON_SIZE, ICON_SIZE));
+
+        // Every condition the sync adapter and the widgets can ask for
+        for (int weatherId = WeatherConditions.MIN_WEATHER_ID;
+             weatherId <= WeatherConditions.MAX_WEATHER_ID; weatherId++) {
+            repository.getArt(weatherId, ICON_SIZE, ICON_SIZE);
+        }
+        repository.prefetch();
+        Log.d(LOG_TAG, "Weather art downloads today: " + repository.getNetworkFetchesToday());
+        assertEquals("Error: the bundled art pack shouldn't be downloaded",
+                fetchesBefore, repository.getNetworkFetchesToday());
+    }
+}
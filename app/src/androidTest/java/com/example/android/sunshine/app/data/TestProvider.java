@@ -16,12 +16,14 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderClient;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 import android.os.Build;
 import android.test.AndroidTestCase;
@@ -512,4 +514,72 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    static private final int QUERY_BENCHMARK_ITERATIONS = 10000;
+
+    // The same projection the Today widget uses
+    static private final String[] WIDGET_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    /*
+        Runs a widget-style query repeatedly and checks that the provider only ever built the
+        joined SQL once.  The timings are logged so the per-query overhead can be compared with
+        what it costs to have SQLiteQueryBuilder rebuild the statement on every call.
+     */
+    public void testJoinedQueryCache() {
+        long locationRowId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        mContext.getContentResolver().bulkInsert(WeatherEntry.CONTENT_URI,
+                createBulkInsertWeatherValues(locationRowId));
+
+        ContentProviderClient client = mContext.getContentResolver()
+                .acquireContentProviderClient(WeatherContract.CONTENT_AUTHORITY);
+        WeatherProvider provider = (WeatherProvider) client.getLocalContentProvider();
+        int cachedBefore = provider.getJoinedQueryCacheSize();
+
+        Uri widgetUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+        String sortOrder = WeatherEntry.COLUMN_DATE + " ASC";
+
+        long start = System.nanoTime();
+        for (int i = 0; i < QUERY_BENCHMARK_ITERATIONS; i++) {
+            Cursor cursor = mContext.getContentResolver().query(widgetUri, WIDGET_COLUMNS,
+                    null, null, sortOrder);
+            assertTrue("Error: widget query returned no rows", cursor.moveToFirst());
+            cursor.close();
+        }
+        long queryNanos = System.nanoTime() - start;
+
+        assertEquals("Error: repeated widget queries should share a single cached statement",
+                cachedBefore + 1, provider.getJoinedQueryCacheSize());
+
+        // What each of those queries used to pay just to build its SQL
+        SQLiteQueryBuilder builder = new SQLiteQueryBuilder();
+        builder.setTables(WeatherEntry.TABLE_NAME + " INNER JOIN " + LocationEntry.TABLE_NAME +
+                " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY +
+                " = " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID);
+        String selection = LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING +
+                " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ? ";
+        start = System.nanoTime();
+        for (int i = 0; i < QUERY_BENCHMARK_ITERATIONS; i++) {
+            builder.buildQuery(WIDGET_COLUMNS, selection, null, null, sortOrder, null);
+        }
+        long buildNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < QUERY_BENCHMARK_ITERATIONS; i++) {
+            provider.getJoinedQuerySql(WeatherProvider.WEATHER_WITH_LOCATION, WIDGET_COLUMNS,
+                    selection, sortOrder);
+        }
+        long cachedNanos = System.nanoTime() - start;
+        client.release();
+
+        Log.d(LOG_TAG, "Widget query: " + (queryNanos / QUERY_BENCHMARK_ITERATIONS) +
+                "ns/query, SQL build: " + (buildNanos / QUERY_BENCHMARK_ITERATIONS) +
+                "ns/query uncached vs " + (cachedNanos / QUERY_BENCHMARK_ITERATIONS) +
+                "ns/query cached");
+    }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import java.text.FieldPosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * The date formatters used by {@link Utility}, created once per thread instead of on every call.
+ *
+ * {@link SimpleDateFormat} isn't thread safe and the widget factories format dates on binder
+ * threads, so each thread gets its own set.  A set is built for the default locale and time
+ * zone; {@link TimeChangeReceiver} calls {@link #invalidate()} when either changes, and every
+ * thread builds a fresh set the next time it formats a date.
+ */
+final class DateFormatCache {
+
+    private static final ThreadLocal<DateFormatCache> sCache = new ThreadLocal<DateFormatCache>();
+    private static volatile int sGeneration;
+
+    private final int mGeneration;
+    private final Locale mLocale;
+    private final TimeZone mTimeZone;
+
+    private final SimpleDateFormat mShortDateFormat;
+    private final SimpleDateFormat mDayNameFormat;
+    private final SimpleDateFormat mMonthDayFormat;
+
+    // Reused for every format call, which is safe as the whole object belongs to one thread
+    private final Date mDate = new Date();
+    private final StringBuffer mBuffer = new StringBuffer();
+    private final FieldPosition mFieldPosition = new FieldPosition(0);
+
+    private DateFormatCache(int generation, Locale locale) {
+        mGeneration = generation;
+        mLocale = locale;
+        mTimeZone = TimeZone.getDefault();
+        mShortDateFormat = new SimpleDateFormat("EEE MMM dd", locale);
+        mDayNameFormat = new SimpleDateFormat("EEEE", locale);
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd", locale);
+    }
+
+    static DateFormatCache get() {
+        DateFormatCache cache = sCache.get();
+        int generation = sGeneration;
+        Locale locale = Locale.getDefault();
+        if (cache == null || cache.mGeneration != generation || !cache.mLocale.equals(locale)) {
+            cache = new DateFormatCache(generation, locale);
+            sCache.set(cache);
+        }
+        return cache;
+    }
+
+    static synchronized void invalidate() {
+        sGeneration++;
+    }
+
+    /**
+     * @return the offset from GMT in seconds at the given time, the same as {@code Time.gmtoff}
+     * after {@code Time.setToNow()} when called with the current time.
+     */
+    long getGmtOffset(long timeInMillis) {
+        return mTimeZone.getOffset(timeInMillis) / 1000;
+    }
+
+    /**
+     * @return the date in the form "Mon Jun 03"
+     */
+    String formatShortDate(long dateInMillis) {
+        return format(mShortDateFormat, dateInMillis);
+    }
+
+    /**
+     * @return the day of the week, e.g "Wednesday"
+     */
+    String formatDayName(long dateInMillis) {
+        return format(mDayNameFormat, dateInMillis);
+    }
+
+    /**
+     * @return the date in the form "June 24"
+     */
+    String formatMonthDay(long dateInMillis) {
+        return format(mMonthDayFormat, dateInMillis);
+    }
+
+    private String format(SimpleDateFormat format, long dateInMillis) {
+        mDate.setTime(dateInMillis);
+        mBuffer.setLength(0);
+        return format.format(mDate, mBuffer, mFieldPosition).toString();
+    }
+}
@@ -204,7 +204,8 @@ public class DetailFragment extends Fragment implements LoaderManager.LoaderCall
             } else {
                 // Use weather art image
                 Glide.with(this)
-                        .load(Utility.getArtUrlForWeatherCondition(getActivity(), weatherId))
+                        .load(WeatherArtRepository.getInstance(getActivity()).getArtSource(
+                                Utility.getArtUrlForWeatherCondition(getActivity(), weatherId)))
                         .error(Utility.getArtResourceForWeatherCondition(weatherId))
                         .crossFade()
                         .into(mIconView);
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.support.v7.widget.RecyclerView;
+
+/**
+ * The difference between two {@link ForecastModel}s, keyed by date.
+ *
+ * Both forecasts are sorted by ascending date, so a single merge walk over the two date arrays
+ * is enough to find which days were removed, which were added and which of the days present in
+ * both changed.  The result is kept as a list of ranged operations that can be replayed on an
+ * adapter with the fine grained notifyItem* calls, instead of rebinding every row with
+ * notifyDataSetChanged.
+ */
+public class ForecastDiff {
+
+    static final int OP_REMOVE = 0;
+    static final int OP_INSERT = 1;
+    static final int OP_CHANGE = 2;
+
+    // The forecast this diff starts from.  It only applies to an adapter still showing it.
+    final ForecastModel from;
+
+    // Packed (op, position, count) triples, positions as seen while replaying in order
+    private int[] mOps = new int[3 * 4];
+    private int mOpCount;
+
+    private int mRemoved;
+    private int mInserted;
+    private int mChanged;
+
+    private ForecastDiff(ForecastModel from) {
+        this.from = from;
+    }
+
+    /**
+     * Computes the operations that turn {@code oldForecast} into {@code newForecast}.  This is
+     * meant to be called off the main thread.
+     */
+    public static ForecastDiff compute(ForecastModel oldForecast, ForecastModel newForecast) {
+        ForecastDiff diff = new ForecastDiff(oldForecast);
+        long[] oldDates = oldForecast.dates;
+        long[] newDates = newForecast.dates;
+        int oldCount = oldDates.length;
+        int newCount = newDates.length;
+
+        int i = 0;
+        int j = 0;
+        // The position in the adapter as the operations are replayed one after the other
+        int position = 0;
+        while (i < oldCount || j < newCount) {
+            if (j == newCount || (i < oldCount && oldDates[i] < newDates[j])) {
+                // This day is gone (usually yesterday, deleted by the sync)
+                diff.add(OP_REMOVE, position);
+                i++;
+            } else if (i == oldCount || newDates[j] < oldDates[i]) {
+                diff.add(OP_INSERT, position);
+                position++;
+                j++;
+            } else {
+                if (!sameContents(oldForecast, i, newForecast, j)) {
+                    diff.add(OP_CHANGE, position);
+                }
+                position++;
+                i++;
+                j++;
+            }
+        }
+
+        // The first row uses its own layout and long date format, so if a different day ends up
+        // first (or the old first day moves down) those rows need to be bound again.
+        if (oldCount > 0 && newCount > 0 && oldDates[0] != newDates[0]) {
+            diff.addChange(0);
+            int oldFirst = newForecast.indexOfDate(oldDates[0]);
+            if (oldFirst > 0) {
+                diff.addChange(oldFirst);
+            }
+        } else if (oldCount > 0 && newCount > 0 &&
+                !equals(oldForecast.longTodayString, newForecast.longTodayString)) {
+            diff.addChange(0);
+        }
+        return diff;
+    }
+
+    private static boolean sameContents(ForecastModel a, int i, ForecastModel b, int j) {
+        return a.weatherIds[i] == b.weatherIds[j]
+                && a.usingLocalGraphics == b.usingLocalGraphics
+                && equals(a.dayStrings[i], b.dayStrings[j])
+                && equals(a.descriptions[i], b.descriptions[j])
+                && equals(a.highStrings[i], b.highStrings[j])
+                && equals(a.lowStrings[i], b.lowStrings[j])
+                && (a.artUrls == null || equals(a.artUrls[i], b.artUrls[j]));
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private void add(int op, int position) {
+        switch (op) {
+            case OP_REMOVE: mRemoved++; break;
+            case OP_INSERT: mInserted++; break;
+            default: mChanged++;
+        }
+
+        // Extend the previous operation when this one continues its range
+        if (mOpCount > 0) {
+            int last = 3 * (mOpCount - 1);
+            int lastOp = mOps[last];
+            int lastPosition = mOps[last + 1];
+            int lastCount = mOps[last + 2];
+            if (lastOp == op) {
+                if ((op == OP_REMOVE && position == lastPosition) ||
+                        (op != OP_REMOVE && position == lastPosition + lastCount)) {
+                    mOps[last + 2] = lastCount + 1;
+                    return;
+                }
+            }
+        }
+
+        if (3 * (mOpCount + 1) > mOps.length) {
+            int[] ops = new int[mOps.length * 2];
+            System.arraycopy(mOps, 0, ops, 0, mOps.length);
+            mOps = ops;
+        }
+        int index = 3 * mOpCount;
+        mOps[index] = op;
+        mOps[index + 1] = position;
+        mOps[index + 2] = 1;
+        mOpCount++;
+    }
+
+    /**
+     * Adds a change for a row, unless the merge walk already changed it.  The walk only moves
+     * forward, so its positions are the rows' final positions.
+     */
+    private void addChange(int position) {
+        for (int i = 0; i < mOpCount; i++) {
+            int index = 3 * i;
+            if (mOps[index] == OP_CHANGE && position >= mOps[index + 1]
+                    && position < mOps[index + 1] + mOps[index + 2]) {
+                return;
+            }
+        }
+        add(OP_CHANGE, position);
+    }
+
+    /**
+     * Replays the operations on the adapter.  The adapter must already be returning the new
+     * forecast.
+     */
+    public void dispatchTo(RecyclerView.Adapter adapter) {
+        for (int i = 0; i < mOpCount; i++) {
+            int index = 3 * i;
+            int position = mOps[index + 1];
+            int count = mOps[index + 2];
+            switch (mOps[index]) {
+                case OP_REMOVE:
+                    adapter.notifyItemRangeRemoved(position, count);
+                    break;
+                case OP_INSERT:
+                    adapter.notifyItemRangeInserted(position, count);
+                    break;
+                default:
+                    adapter.notifyItemRangeChanged(position, count);
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return mOpCount == 0;
+    }
+
+    public int getRemovedCount() {
+        return mRemoved;
+    }
+
+    public int getInsertedCount() {
+        return mInserted;
+    }
+
+    /**
+     * @return how many rows will be bound again because their contents changed.
+     */
+    public int getChangedCount() {
+        return mChanged;
+    }
+
+    @Override
+    public String toString() {
+        return "ForecastDiff{removed=" + mRemoved + ", inserted=" + mInserted +
+                ", changed=" + mChanged + "}";
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.content.AsyncTaskLoader;
+
+/**
+ * Loads the forecast list and converts it into a {@link ForecastModel} on the loader's
+ * background thread, so the cursor is never touched and no row text is formatted on the main
+ * thread.
+ *
+ * Like {@link android.support.v4.content.CursorLoader} it reloads whenever the content at the
+ * given uri changes.  Because the cursor is closed as soon as it has been copied, the observer is
+ * registered with the ContentResolver instead of on the cursor.
+ *
+ * Each new forecast carries a {@link ForecastDiff} against the one delivered before it, so a
+ * sync that changes a single day only rebinds that day's row.
+ */
+public class ForecastLoader extends AsyncTaskLoader<ForecastModel> {
+
+    private final ForceLoadContentObserver mObserver;
+    private final Uri mUri;
+    private final String[] mProjection;
+    private final String mSortOrder;
+
+    // Written on the main thread, read by loadInBackground to diff against
+    private volatile ForecastModel mForecast;
+    private boolean mObserverRegistered;
+
+    public ForecastLoader(Context context, Uri uri, String[] projection, String sortOrder) {
+        super(context);
+        mObserver = new ForceLoadContentObserver();
+        mUri = uri;
+        mProjection = projection;
+        mSortOrder = sortOrder;
+    }
+
+    @Override
+    public ForecastModel loadInBackground() {
+        Cursor cursor = getContext().getContentResolver().query(mUri, mProjection, null, null,
+                mSortOrder);
+        if (cursor == null) {
+            return ForecastModel.empty(getContext());
+        }
+        ForecastModel forecast;
+        try {
+            forecast = ForecastModel.fromCursor(getContext(), cursor);
+        } finally {
+            cursor.close();
+        }
+
+        // Work out what changed here too, so the adapter only has to replay it
+        ForecastModel previous = mForecast;
+        if (previous != null) {
+            forecast.diff = ForecastDiff.compute(previous, forecast);
+        }
+        return forecast;
+    }
+
+    @Override
+    public void deliverResult(ForecastModel forecast) {
+        if (isReset()) {
+            return;
+        }
+        mForecast = forecast;
+        if (isStarted()) {
+            super.deliverResult(forecast);
+        }
+    }
+
+    @Override
+    protected void onStartLoading() {
+        if (!mObserverRegistered) {
+            getContext().getContentResolver().registerContentObserver(mUri, true, mObserver);
+            mObserverRegistered = true;
+        }
+        if (mForecast != null) {
+            deliverResult(mForecast);
+        }
+        if (takeContentChanged() || mForecast == null || mForecast.isStale()) {
+            forceLoad();
+        }
+    }
+
+    @Override
+    protected void onStopLoading() {
+        cancelLoad();
+    }
+
+    @Override
+    protected void onReset() {
+        super.onReset();
+        onStopLoading();
+        if (mObserverRegistered) {
+            getContext().getContentResolver().unregisterContentObserver(mObserver);
+            mObserverRegistered = false;
+        }
+        mForecast = null;
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.text.format.Time;
+
+import java.util.Locale;
+
+/**
+ * {@link ForecastModel} is an immutable copy of the forecast list, read out of a
+ * {@link android.database.Cursor} once (off the main thread) into plain primitive arrays so
+ * that binding a row never has to touch the cursor.
+ *
+ * All of the text a row shows is formatted here as well, so binding a row is just a matter of
+ * copying fields into views.  A model is built again whenever the data or the units change.
+ */
+public class ForecastModel {
+
+    public final long[] dates;
+    public final int[] weatherIds;
+    public final float[] highs;
+    public final float[] lows;
+
+    // Coordinates of the forecast location, used for the map intent
+    public final String coordLat;
+    public final String coordLong;
+
+    // Ready to bind display data, one entry per row
+    public final String[] dayStrings;
+    public final String[] descriptions;
+    public final String[] descriptionContentDescriptions;
+    public final String[] highStrings;
+    public final String[] highContentDescriptions;
+    public final String[] lowStrings;
+    public final String[] lowContentDescriptions;
+    public final String[] transitionNames;
+    public final int[] iconResources;
+    public final int[] artResources;
+    // Null when the local graphics are in use
+    public final String[] artUrls;
+    public final boolean usingLocalGraphics;
+
+    // "Today, June 24" for the first row when it is shown with the large today layout
+    public final String longTodayString;
+
+    // The local julian day and the locale the strings were formatted for
+    private final int mFormattedJulianDay;
+    private final Locale mFormattedLocale;
+
+    // How to get here from the forecast the loader delivered before this one, if it had one
+    ForecastDiff diff;
+
+    ForecastModel(Context context, long[] dates, int[] weatherIds, float[] highs, float[] lows,
+                  String coordLat, String coordLong) {
+        this.dates = dates;
+        this.weatherIds = weatherIds;
+        this.highs = highs;
+        this.lows = lows;
+        this.coordLat = coordLat;
+        this.coordLong = coordLong;
+
+        int count = dates.length;
+        dayStrings = new String[count];
+        descriptions = new String[count];
+        descriptionContentDescriptions = new String[count];
+        highStrings = new String[count];
+        highContentDescriptions = new String[count];
+        lowStrings = new String[count];
+        lowContentDescriptions = new String[count];
+        transitionNames = new String[count];
+        iconResources = new int[count];
+        artResources = new int[count];
+        usingLocalGraphics = SettingsSnapshot.get(context).usingLocalGraphics;
+        WeatherConditions conditions = WeatherConditions.get(context);
+        WeatherFormatter formatter = WeatherFormatter.get(context);
+        WeatherArtRepository artRepository = WeatherArtRepository.getInstance(context);
+        artUrls = usingLocalGraphics ? null : new String[count];
+        mFormattedJulianDay = currentJulianDay();
+        mFormattedLocale = Locale.getDefault();
+
+        for (int i = 0; i < count; i++) {
+            int weatherId = weatherIds[i];
+            iconResources[i] = WeatherConditions.getIconResource(weatherId);
+            artResources[i] = WeatherConditions.getArtResource(weatherId);
+            if (!usingLocalGraphics) {
+                // The downloaded copy if the art pack has been fetched already
+                artUrls[i] = artRepository.getArtSource(conditions.getArtUrl(weatherId));
+            }
+
+            // this enables better animations. even if we lose state due to a device rotation,
+            // the animator can use this to re-find the original view.  Keyed by date so a row
+            // keeps its name when a diff only moves it
+            transitionNames[i] = "iconView" + dates[i];
+
+            dayStrings[i] = Utility.getFriendlyDayString(context, dates[i], false);
+
+            String description = conditions.getDescription(context, weatherId);
+            descriptions[i] = description;
+            descriptionContentDescriptions[i] = context.getString(R.string.a11y_forecast, description);
+
+            String highString = formatter.formatTemperature(highs[i]);
+            highStrings[i] = highString;
+            highContentDescriptions[i] = context.getString(R.string.a11y_high_temp, highString);
+
+            String lowString = formatter.formatTemperature(lows[i]);
+            lowStrings[i] = lowString;
+            lowContentDescriptions[i] = context.getString(R.string.a11y_low_temp, lowString);
+        }
+        longTodayString = count > 0 ? Utility.getFriendlyDayString(context, dates[0], true) : null;
+    }
+
+    /**
+     * Reads and formats every row of a cursor built with {@link ForecastFragment}'s
+     * FORECAST_COLUMNS projection.  The cursor is left open; closing it is up to the caller.
+     */
+    public static ForecastModel fromCursor(Context context, Cursor cursor) {
+        int count = cursor.getCount();
+
+        long[] dates = new long[count];
+        int[] weatherIds = new int[count];
+        float[] highs = new float[count];
+        float[] lows = new float[count];
+        String coordLat = null;
+        String coordLong = null;
+
+        for (int i = 0; i < count && cursor.moveToPosition(i); i++) {
+            if (i == 0) {
+                coordLat = cursor.getString(ForecastFragment.COL_COORD_LAT);
+                coordLong = cursor.getString(ForecastFragment.COL_COORD_LONG);
+            }
+            dates[i] = cursor.getLong(ForecastFragment.COL_WEATHER_DATE);
+            weatherIds[i] = cursor.getInt(ForecastFragment.COL_WEATHER_CONDITION_ID);
+            highs[i] = cursor.getFloat(ForecastFragment.COL_WEATHER_MAX_TEMP);
+            lows[i] = cursor.getFloat(ForecastFragment.COL_WEATHER_MIN_TEMP);
+        }
+        return new ForecastModel(context, dates, weatherIds, highs, lows, coordLat, coordLong);
+    }
+
+    static ForecastModel empty(Context context) {
+        return new ForecastModel(context, new long[0], new int[0], new float[0], new float[0],
+                null, null);
+    }
+
+    public int getCount() {
+        return dates.length;
+    }
+
+    /**
+     * @return the position of the given date, or -1 if it isn't part of this forecast.
+     */
+    public int indexOfDate(long date) {
+        for (int i = 0; i < dates.length; i++) {
+            if (dates[i] == date) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The day strings are relative ("Today", "Tomorrow", "Wednesday"), so once the day has
+     * rolled over they have to be formatted again.  So does everything once the language
+     * changed, the loader keeps its model across the activity being recreated for it.
+     */
+    public boolean isStale() {
+        return mFormattedJulianDay != currentJulianDay()
+                || !mFormattedLocale.equals(Locale.getDefault());
+    }
+
+    private static int currentJulianDay() {
+        Time time = new Time();
+        time.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+    }
+}
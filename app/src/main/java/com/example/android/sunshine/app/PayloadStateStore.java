@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.format.Time;
+import android.util.Log;
+
+/**
+ * Remembers a hash of the last payload delivered to each consumer of the weather data (the
+ * widgets, Muzei, the watch face), so a sync that brings the same weather doesn't render, publish
+ * or send it all again.
+ *
+ * Every update that is skipped this way is counted, per consumer and per day.  The state is kept
+ * in its own preferences file so it survives the process being killed between syncs.
+ */
+public class PayloadStateStore {
+
+    private static final String LOG_TAG = PayloadStateStore.class.getSimpleName();
+
+    public static final String CONSUMER_WIDGETS = "widgets";
+    public static final String CONSUMER_TODAY_WIDGET = "today_widget";
+    public static final String CONSUMER_MUZEI = "muzei";
+    public static final String CONSUMER_WEAR = "wear";
+
+    private static final String PREFS_NAME = "payload_state";
+    private static final String HASH_PREFIX = "hash_";
+    private static final String AVOIDED_DAY_PREFIX = "avoided_day_";
+    private static final String AVOIDED_COUNT_PREFIX = "avoided_count_";
+
+    private static PayloadStateStore sInstance;
+
+    private final SharedPreferences mPrefs;
+
+    public static synchronized PayloadStateStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new PayloadStateStore(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private PayloadStateStore(Context context) {
+        mPrefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * @return true if the payload with this hash is the last one delivered to the consumer.  The
+     * caller is expected to skip the update then, so it's counted as avoided.
+     */
+    public synchronized boolean isDelivered(String consumer, int payloadHash) {
+        String hashKey = HASH_PREFIX + consumer;
+        if (!mPrefs.contains(hashKey) || mPrefs.getInt(hashKey, 0) != payloadHash) {
+            return false;
+        }
+
+        String dayKey = AVOIDED_DAY_PREFIX + consumer;
+        String countKey = AVOIDED_COUNT_PREFIX + consumer;
+        int today = today();
+        int count = mPrefs.getInt(dayKey, -1) == today ? mPrefs.getInt(countKey, 0) + 1 : 1;
+        mPrefs.edit().putInt(dayKey, today).putInt(countKey, count).apply();
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, "Unchanged " + consumer + " update skipped, " + count + " today");
+        }
+        return true;
+    }
+
+    /**
+     * Records the payload with this hash as delivered to the consumer.
+     */
+    public synchronized void setDelivered(String consumer, int payloadHash) {
+        mPrefs.edit().putInt(HASH_PREFIX + consumer, payloadHash).apply();
+    }
+
+    /**
+     * @return true if a payload was delivered to the consumer and not forgotten since
+     */
+    public synchronized boolean hasDelivered(String consumer) {
+        return mPrefs.contains(HASH_PREFIX + consumer);
+    }
+
+    /**
+     * Forgets what was delivered to the consumer, so the next update goes through.
+     */
+    public synchronized void forget(String consumer) {
+        mPrefs.edit().remove(HASH_PREFIX + consumer).apply();
+    }
+
+    /**
+     * @return how many updates to the consumer were skipped today.
+     */
+    public synchronized int getAvoidedToday(String consumer) {
+        if (mPrefs.getInt(AVOIDED_DAY_PREFIX + consumer, -1) != today()) {
+            return 0;
+        }
+        return mPrefs.getInt(AVOIDED_COUNT_PREFIX + consumer, 0);
+    }
+
+    private static int today() {
+        Time time = new Time();
+        time.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+    }
+}
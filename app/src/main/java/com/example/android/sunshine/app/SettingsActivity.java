@@ -131,6 +131,8 @@ public class SettingsActivity extends PreferenceActivity
     // start our synchronization here
     @Override
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+        // Make sure anything reloading because of this change already sees the new value
+        SettingsSnapshot.refresh(this);
         if ( key.equals(getString(R.string.pref_location_key)) ) {
             // we've changed the location
             // first clear locationStatus
@@ -144,8 +146,13 @@ public class SettingsActivity extends PreferenceActivity
             Preference locationPreference = findPreference(getString(R.string.pref_location_key));
             bindPreferenceSummaryToValue(locationPreference);
         } else if ( key.equals(getString(R.string.pref_art_pack_key)) ) {
-            // art pack have changed. update lists of weather entries accordingly
+            // art pack have changed. fetch the new pack and update lists of weather entries
+            // accordingly
+            WeatherArtRepository.getInstance(this).prefetchAsync();
             getContentResolver().notifyChange(WeatherContract.WeatherEntry.CONTENT_URI, null);
+        } else if ( key.equals(getString(R.string.pref_wear_custom_art_key)) ) {
+            // the watch face needs the art sent, or stop getting it, with the next sync
+            PayloadStateStore.getInstance(this).forget(PayloadStateStore.CONSUMER_WEAR);
         }
     }
 
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+/**
+ * An immutable copy of the user settings that are read on every bound row, widget item and
+ * notification.  Reading them straight from {@link SharedPreferences} costs a map lookup plus a
+ * {@link Context#getString(int)} per key on each call; here they are read once and then only
+ * read again when a preference changes.
+ *
+ * The current snapshot is published through a volatile field, so it can be read from any thread
+ * (the loader, the widget binder threads, the sync adapter) without locking.
+ */
+public final class SettingsSnapshot {
+
+    public final String location;
+    public final boolean metric;
+    // The art pack preference value, a url format with one %s for the condition
+    public final String artPack;
+    public final boolean usingLocalGraphics;
+
+    private static volatile SettingsSnapshot sCurrent;
+
+    // SharedPreferences only keeps weak references to its listeners, so this one has to be held
+    // here to stay registered
+    private static SharedPreferences.OnSharedPreferenceChangeListener sListener;
+
+    private SettingsSnapshot(Context context, SharedPreferences prefs) {
+        location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+
+        String unitsMetric = context.getString(R.string.pref_units_metric);
+        metric = prefs.getString(context.getString(R.string.pref_units_key), unitsMetric)
+                .equals(unitsMetric);
+
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        artPack = prefs.getString(context.getString(R.string.pref_art_pack_key), sunshineArtPack);
+        usingLocalGraphics = artPack.equals(sunshineArtPack);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof SettingsSnapshot)) return false;
+        SettingsSnapshot that = (SettingsSnapshot) o;
+        return metric == that.metric && location.equals(that.location)
+                && artPack.equals(that.artPack);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = location.hashCode();
+        result = 31 * result + (metric ? 1 : 0);
+        result = 31 * result + artPack.hashCode();
+        return result;
+    }
+
+    /**
+     * @return the current settings.  The first call reads them and starts listening for changes.
+     */
+    public static SettingsSnapshot get(Context context) {
+        SettingsSnapshot snapshot = sCurrent;
+        if (snapshot == null) {
+            snapshot = init(context.getApplicationContext());
+        }
+        return snapshot;
+    }
+
+    private static synchronized SettingsSnapshot init(final Context appContext) {
+        if (sCurrent == null) {
+            SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(appContext);
+            sListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+                    if (key.equals(appContext.getString(R.string.pref_location_key))
+                            || key.equals(appContext.getString(R.string.pref_units_key))
+                            || key.equals(appContext.getString(R.string.pref_art_pack_key))) {
+                        refresh(appContext);
+                    }
+                }
+            };
+            prefs.registerOnSharedPreferenceChangeListener(sListener);
+            sCurrent = new SettingsSnapshot(appContext, prefs);
+        }
+        return sCurrent;
+    }
+
+    /**
+     * Reads the settings again.  This happens on its own when a preference changes, but anything
+     * that reacts to the same change itself (like {@link SettingsActivity} notifying the weather
+     * uri) should call this first, as the order the listeners run in isn't defined.
+     */
+    public static void refresh(Context context) {
+        Context appContext = context.getApplicationContext();
+        if (sCurrent == null) {
+            init(appContext);
+            return;
+        }
+        sCurrent = new SettingsSnapshot(appContext,
+                PreferenceManager.getDefaultSharedPreferences(appContext));
+    }
+}
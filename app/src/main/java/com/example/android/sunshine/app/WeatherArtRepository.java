@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.preference.PreferenceManager;
+import android.support.v4.util.LruCache;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * One place to get the weather art from, for the widgets, the notification, the watch face and
+ * Muzei.
+ *
+ * An art pack is a handful of images, so the whole pack is downloaded once (per art pack) into
+ * the cache directory instead of each consumer fetching the art it needs at its own size.  Every
+ * size a consumer asks for is scaled once and kept both on disk and in a small LRU memory cache.
+ * With the Sunshine art pack the art is the same as the bundled drawables, so nothing is
+ * downloaded at all.
+ *
+ * {@link #getArt(int, int, int)} blocks, so call it from a background thread.  Views loading art
+ * with Glide can use {@link #getArtSource(String)} to load the downloaded copy instead of the
+ * network url.
+ */
+public class WeatherArtRepository {
+
+    private static final String LOG_TAG = WeatherArtRepository.class.getSimpleName();
+
+    private static final String ART_DIR = "weather_art";
+    private static final String ORIGINAL_SUFFIX = ".orig";
+    private static final String SCALED_SUFFIX = ".png";
+
+    // The largest art is well under a megabyte at the sizes the consumers ask for
+    private static final int MEMORY_CACHE_BYTES = 4 * 1024 * 1024;
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 15000;
+    private static final int READ_TIMEOUT_MILLIS = 15000;
+
+    private static WeatherArtRepository sInstance;
+
+    private final Context mContext;
+    private final File mArtDir;
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final ExecutorService mPrefetchExecutor = Executors.newSingleThreadExecutor();
+
+    // Art urls with a complete copy on disk, so the main thread never has to look
+    private final Set<String> mDownloaded = Collections.synchronizedSet(new HashSet<String>());
+
+    // Held while downloading an art url, so two consumers don't fetch the same image at once.
+    // One per url, so a slow download doesn't hold up the others.
+    private final Map<String, Object> mDownloadLocks = new HashMap<String, Object>();
+
+    public static synchronized WeatherArtRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherArtRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherArtRepository(Context context) {
+        mContext = context;
+        mArtDir = new File(context.getCacheDir(), ART_DIR);
+        mMemoryCache = new LruCache<String, Bitmap>(MEMORY_CACHE_BYTES) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+    }
+
+    /**
+     * Returns the art for the weather condition in the current art pack, scaled to fit in the
+     * given size.  Falls back to the bundled art if the pack's image can't be downloaded.  The
+     * bitmap is shared with other consumers, so it must not be recycled or modified.
+     *
+     * @return the art, or null if there is no art for the condition.
+     */
+    public Bitmap getArt(int weatherId, int width, int height) {
+        int artResourceId = WeatherConditions.getArtResource(weatherId);
+        if (artResourceId == -1) {
+            return null;
+        }
+
+        String artUrl = SettingsSnapshot.get(mContext).usingLocalGraphics ? null :
+                WeatherConditions.get(mContext).getArtUrl(weatherId);
+        String size = "@" + width + 'x' + height;
+        String resourceKey = "res:" + artResourceId + size;
+        String key = artUrl != null ? artUrl + size : resourceKey;
+
+        Bitmap art = mMemoryCache.get(key);
+        if (art != null) {
+            return art;
+        }
+
+        File scaledFile = new File(mArtDir, fileName(key) + SCALED_SUFFIX);
+        if (artUrl != null) {
+            art = BitmapFactory.decodeFile(scaledFile.getPath());
+        }
+
+        if (art == null) {
+            Bitmap original = null;
+            if (artUrl != null) {
+                File originalFile = download(artUrl);
+                if (originalFile != null) {
+                    original = decodeSampled(originalFile.getPath(), width, height);
+                }
+            }
+            boolean downloaded = original != null;
+            if (original == null) {
+                // Kept under the bundled art's key, so the pack's art is looked for again
+                key = resourceKey;
+                art = mMemoryCache.get(key);
+                if (art != null) {
+                    return art;
+                }
+                original = BitmapFactory.decodeResource(mContext.getResources(), artResourceId);
+            }
+            if (original == null) {
+                return null;
+            }
+            art = fitCenter(original, width, height);
+
+            // The bundled art is decoded again quickly enough, only keep downloaded art on disk.
+            // Not keeping the fallback also means a failed download is tried again next time.
+            if (downloaded) {
+                write(art, scaledFile);
+            }
+        }
+
+        mMemoryCache.put(key, art);
+        return art;
+    }
+
+    /**
+     * @return a file uri of the downloaded copy of the art url if there is one, the art url
+     * itself otherwise.  Doesn't touch the disk, so it's fine to call from the main thread.
+     */
+    public String getArtSource(String artUrl) {
+        if (artUrl != null && mDownloaded.contains(artUrl)) {
+            return Uri.fromFile(originalFile(artUrl)).toString();
+        }
+        return artUrl;
+    }
+
+    /**
+     * Downloads every image of the current art pack that isn't on disk yet.  This blocks, so call
+     * it from a background thread.
+     */
+    public void prefetch() {
+        if (SettingsSnapshot.get(mContext).usingLocalGraphics) {
+            return;
+        }
+        for (String artUrl : WeatherConditions.get(mContext).getPackArtUrls()) {
+            download(artUrl);
+        }
+    }
+
+    /**
+     * Runs {@link #prefetch()} on a background thread, e.g. right after the art pack changed.
+     */
+    public void prefetchAsync() {
+        mPrefetchExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                prefetch();
+            }
+        });
+    }
+
+    /**
+     * @return how many images were downloaded today.
+     */
+    public int getNetworkFetchesToday() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        if (prefs.getInt(mContext.getString(R.string.pref_art_fetch_day), -1) != today()) {
+            return 0;
+        }
+        return prefs.getInt(mContext.getString(R.string.pref_art_fetch_count), 0);
+    }
+
+    private File originalFile(String artUrl) {
+        return new File(mArtDir, fileName(artUrl) + ORIGINAL_SUFFIX);
+    }
+
+    /**
+     * @return the SHA-1 of the key in hex, so two keys never share a file
+     */
+    private static String fileName(String key) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Android device has SHA-1
+            throw new IllegalStateException(e);
+        }
+        byte[] hash;
+        try {
+            hash = digest.digest(key.getBytes("UTF-8"));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        StringBuilder name = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            name.append(Character.forDigit((b >> 4) & 0xf, 16));
+            name.append(Character.forDigit(b & 0xf, 16));
+        }
+        return name.toString();
+    }
+
+    /**
+     * @return the downloaded copy of the art url, or null if it couldn't be downloaded.
+     */
+    private File download(String artUrl) {
+        File file = originalFile(artUrl);
+        if (file.exists()) {
+            mDownloaded.add(artUrl);
+            return file;
+        }
+        synchronized (getDownloadLock(artUrl)) {
+            // Another consumer may have downloaded it while this one waited
+            if (file.exists()) {
+                mDownloaded.add(artUrl);
+                return file;
+            }
+            if (!mArtDir.exists() && !mArtDir.mkdirs()) {
+                Log.e(LOG_TAG, "Unable to create " + mArtDir);
+                return null;
+            }
+
+            // Download next to the final file and rename, so a partial download is never used
+            File partial = new File(mArtDir, file.getName() + ".tmp");
+            HttpURLConnection urlConnection = null;
+            InputStream in = null;
+            OutputStream out = null;
+            try {
+                urlConnection = (HttpURLConnection) new URL(artUrl).openConnection();
+                urlConnection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+                urlConnection.setReadTimeout(READ_TIMEOUT_MILLIS);
+                urlConnection.setRequestMethod("GET");
+                urlConnection.connect();
+                countNetworkFetch();
+                if (urlConnection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    Log.e(LOG_TAG, "Error downloading " + artUrl + ": " +
+                            urlConnection.getResponseCode());
+                    return null;
+                }
+
+                in = urlConnection.getInputStream();
+                out = new FileOutputStream(partial);
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                out.close();
+                out = null;
+                if (!partial.renameTo(file)) {
+                    Log.e(LOG_TAG, "Unable to move " + partial + " to " + file);
+                    return null;
+                }
+                mDownloaded.add(artUrl);
+                return file;
+            } catch (IOException e) {
+                Log.e(LOG_TAG, "Error downloading " + artUrl, e);
+                return null;
+            } finally {
+                closeQuietly(in);
+                closeQuietly(out);
+                partial.delete();
+                if (urlConnection != null) {
+                    urlConnection.disconnect();
+                }
+            }
+        }
+    }
+
+    private Object getDownloadLock(String artUrl) {
+        synchronized (mDownloadLocks) {
+            Object lock = mDownloadLocks.get(artUrl);
+            if (lock == null) {
+                lock = new Object();
+                mDownloadLocks.put(artUrl, lock);
+            }
+            return lock;
+        }
+    }
+
+    private void countNetworkFetch() {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        String dayKey = mContext.getString(R.string.pref_art_fetch_day);
+        String countKey = mContext.getString(R.string.pref_art_fetch_count);
+        int today = today();
+        int count = prefs.getInt(dayKey, -1) == today ? prefs.getInt(countKey, 0) + 1 : 1;
+        prefs.edit().putInt(dayKey, today).putInt(countKey, count).apply();
+        Log.d(LOG_TAG, "Weather art downloads today: " + count);
+    }
+
+    private static int today() {
+        Time time = new Time();
+        time.setToNow();
+        return Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+    }
+
+    /**
+     * Decodes the image at no more than twice the size it will be scaled to.
+     */
+    private static Bitmap decodeSampled(String path, int width, int height) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width * 2
+                && options.outHeight / (sampleSize * 2) >= height * 2) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeFile(path, options);
+    }
+
+    /**
+     * Scales the bitmap to fit in the given size, keeping its aspect ratio, like Glide's
+     * fitCenter.
+     */
+    static Bitmap fitCenter(Bitmap bitmap, int width, int height) {
+        if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+            return bitmap;
+        }
+        float scale = Math.min((float) width / bitmap.getWidth(), (float) height / bitmap.getHeight());
+        int scaledWidth = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int scaledHeight = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        return Bitmap.createScaledBitmap(bitmap, scaledWidth, scaledHeight, true);
+    }
+
+    /**
+     * Writes the bitmap next to the file and renames it over, so the file is never read half
+     * written.  Each write has its own temporary file, so two threads writing the same art don't
+     * mix their bytes.
+     */
+    private static void write(Bitmap bitmap, File file) {
+        File partial = null;
+        OutputStream out = null;
+        try {
+            partial = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+            out = new FileOutputStream(partial);
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+            out.close();
+            out = null;
+            if (!partial.renameTo(file)) {
+                Log.e(LOG_TAG, "Unable to move " + partial + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "Error writing " + file, e);
+        } finally {
+            closeQuietly(out);
+            if (partial != null) {
+                partial.delete();
+            }
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing useful to do about it
+            }
+        }
+    }
+}
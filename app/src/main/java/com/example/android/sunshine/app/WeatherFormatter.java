@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * Formats temperatures and wind the way {@code String.format} does with the format_temperature
+ * and format_wind_* strings, but by appending to a {@link StringBuilder} instead of going through
+ * a {@link java.util.Formatter}, so nothing is boxed, parsed or allocated per call.
+ *
+ * The format strings are split around their placeholders once, and the digits and minus sign
+ * of the default locale are taken from the platform formatter itself, so the output matches.  If
+ * a format string doesn't have the expected shape, or a value is too large to round through a
+ * long, the formatter falls back to {@code String.format}.
+ *
+ * Instances are immutable and shared between threads; one is built for each locale and units
+ * setting.
+ */
+public final class WeatherFormatter {
+
+    private static final String TEMPERATURE_PLACEHOLDER = "%1.0f";
+    private static final String SPEED_PLACEHOLDER = "%1$1.0f";
+    private static final String DIRECTION_PLACEHOLDER = "%2$s";
+
+    // Anything this large has no business being a temperature, let String.format deal with it
+    private static final double MAX_FAST_VALUE = 1e15;
+
+    private static final float MPH_PER_KMH = .621371192237334f;
+
+    // From wind direction in degrees, the compass direction in steps of 45 degrees from north
+    private static final String[] DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+    private static final String UNKNOWN_DIRECTION = "Unknown";
+
+    private static volatile WeatherFormatter sCurrent;
+
+    private static final ThreadLocal<StringBuilder> sBuilder = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(32);
+        }
+    };
+
+    private final Locale mLocale;
+    private final boolean mMetric;
+
+    private final String mTemperatureFormat;
+    private final String mWindFormat;
+
+    // Literal text around the placeholders, null when the format couldn't be split
+    private final String mTemperaturePrefix;
+    private final String mTemperatureSuffix;
+    private final String mWindPrefix;
+    private final String mWindInfix;
+    private final String mWindSuffix;
+
+    // Zero digit and minus sign as the platform formatter writes them for this locale
+    private final char mZeroDigit;
+    private final String mMinusSign;
+    private final boolean mFastDigits;
+
+    private WeatherFormatter(Context context, Locale locale, boolean metric) {
+        mLocale = locale;
+        mMetric = metric;
+
+        mTemperatureFormat = context.getString(R.string.format_temperature);
+        int temperatureStart = mTemperatureFormat.indexOf(TEMPERATURE_PLACEHOLDER);
+        int temperatureEnd = temperatureStart + TEMPERATURE_PLACEHOLDER.length();
+        if (temperatureStart >= 0
+                && isLiteral(mTemperatureFormat, 0, temperatureStart)
+                && isLiteral(mTemperatureFormat, temperatureEnd, mTemperatureFormat.length())) {
+            mTemperaturePrefix = mTemperatureFormat.substring(0, temperatureStart);
+            mTemperatureSuffix = mTemperatureFormat.substring(temperatureEnd);
+        } else {
+            mTemperaturePrefix = null;
+            mTemperatureSuffix = null;
+        }
+
+        mWindFormat = context.getString(metric ? R.string.format_wind_kmh : R.string.format_wind_mph);
+        int speedStart = mWindFormat.indexOf(SPEED_PLACEHOLDER);
+        int speedEnd = speedStart + SPEED_PLACEHOLDER.length();
+        int directionStart = mWindFormat.indexOf(DIRECTION_PLACEHOLDER);
+        int directionEnd = directionStart + DIRECTION_PLACEHOLDER.length();
+        if (speedStart >= 0 && directionStart >= speedEnd
+                && isLiteral(mWindFormat, 0, speedStart)
+                && isLiteral(mWindFormat, speedEnd, directionStart)
+                && isLiteral(mWindFormat, directionEnd, mWindFormat.length())) {
+            mWindPrefix = mWindFormat.substring(0, speedStart);
+            mWindInfix = mWindFormat.substring(speedEnd, directionStart);
+            mWindSuffix = mWindFormat.substring(directionEnd);
+        } else {
+            mWindPrefix = null;
+            mWindInfix = null;
+            mWindSuffix = null;
+        }
+
+        String zero = String.format(locale, TEMPERATURE_PLACEHOLDER, 0.0);
+        String minusOne = String.format(locale, TEMPERATURE_PLACEHOLDER, -1.0);
+        mFastDigits = zero.length() == 1 && minusOne.length() > 1
+                && minusOne.charAt(minusOne.length() - 1) == (char) (zero.charAt(0) + 1);
+        mZeroDigit = zero.charAt(0);
+        mMinusSign = minusOne.substring(0, minusOne.length() - 1);
+    }
+
+    private static boolean isLiteral(String format, int start, int end) {
+        return format.indexOf('%', start) < 0 || format.indexOf('%', start) >= end;
+    }
+
+    /**
+     * @return the formatter for the default locale and the current units setting.
+     */
+    public static WeatherFormatter get(Context context) {
+        Locale locale = Locale.getDefault();
+        boolean metric = SettingsSnapshot.get(context).metric;
+        WeatherFormatter formatter = sCurrent;
+        if (formatter == null || formatter.mMetric != metric || !formatter.mLocale.equals(locale)) {
+            formatter = new WeatherFormatter(context, locale, metric);
+            sCurrent = formatter;
+        }
+        return formatter;
+    }
+
+    /**
+     * Appends a temperature stored in Celsius, converted to Fahrenheit if the user prefers it.
+     */
+    public StringBuilder appendTemperature(StringBuilder out, double temperature) {
+        if (!mMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        if (mTemperaturePrefix == null || !canRound(temperature)) {
+            return out.append(String.format(mTemperatureFormat, temperature));
+        }
+        out.append(mTemperaturePrefix);
+        appendRounded(out, temperature);
+        return out.append(mTemperatureSuffix);
+    }
+
+    /**
+     * Appends a wind speed stored in km/h, converted to mph if the user prefers it, followed by
+     * the compass direction for the given degrees.
+     */
+    public StringBuilder appendWind(StringBuilder out, float windSpeed, float degrees) {
+        if (!mMetric) {
+            windSpeed = MPH_PER_KMH * windSpeed;
+        }
+
+        String direction = getDirection(degrees);
+        if (mWindPrefix == null || !canRound(windSpeed)) {
+            return out.append(String.format(mWindFormat, windSpeed, direction));
+        }
+        out.append(mWindPrefix);
+        appendRounded(out, windSpeed);
+        out.append(mWindInfix);
+        out.append(direction);
+        return out.append(mWindSuffix);
+    }
+
+    public String formatTemperature(double temperature) {
+        StringBuilder builder = sBuilder.get();
+        builder.setLength(0);
+        return appendTemperature(builder, temperature).toString();
+    }
+
+    public String formatWind(float windSpeed, float degrees) {
+        StringBuilder builder = sBuilder.get();
+        builder.setLength(0);
+        return appendWind(builder, windSpeed, degrees).toString();
+    }
+
+    static String getDirection(float degrees) {
+        if (degrees >= 337.5 || degrees < 22.5) {
+            return DIRECTIONS[0];
+        } else if (degrees >= 22.5 && degrees < 337.5) {
+            // Each of the other directions covers 45 degrees starting at 22.5, and the bounds
+            // are exact in binary so this picks the same one the range checks did
+            return DIRECTIONS[1 + (int) ((degrees - 22.5) / 45)];
+        }
+        // NaN
+        return UNKNOWN_DIRECTION;
+    }
+
+    private boolean canRound(double value) {
+        return mFastDigits && Math.abs(value) < MAX_FAST_VALUE;
+    }
+
+    /**
+     * Appends the value rounded half up to a whole number, like "%1.0f".  The sign is kept for
+     * values that round to zero, so -0.2 is "-0" just as the platform formatter writes it.
+     */
+    private void appendRounded(StringBuilder out, double value) {
+        boolean negative = Double.doubleToRawLongBits(value) < 0;
+        double abs = Math.abs(value);
+        long whole = (long) abs;
+        // abs - whole is exact at this magnitude, so this is the same tie break Formatter uses
+        if (abs - whole >= 0.5) {
+            whole++;
+        }
+
+        if (negative) {
+            out.append(mMinusSign);
+        }
+        long divisor = 1;
+        while (divisor <= whole / 10) {
+            divisor *= 10;
+        }
+        do {
+            out.append((char) (mZeroDigit + (int) ((whole / divisor) % 10)));
+            divisor /= 10;
+        } while (divisor > 0);
+    }
+}
@@ -24,6 +24,9 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
 
+import java.util.Arrays;
+import java.util.HashMap;
+
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
@@ -83,14 +86,9 @@ public class WeatherProvider extends ContentProvider {
             selection = sLocationSettingWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                selection,
-                selectionArgs,
-                null,
-                null,
-                sortOrder
-        );
+        return mOpenHelper.getReadableDatabase().rawQuery(
+                getJoinedQuerySql(WEATHER_WITH_LOCATION, projection, selection, sortOrder),
+                selectionArgs);
     }
 
     private Cursor getWeatherByLocationSettingAndDate(
@@ -98,14 +96,90 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
-                projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
-                null,
-                null,
-                sortOrder
-        );
+        return mOpenHelper.getReadableDatabase().rawQuery(
+                getJoinedQuerySql(WEATHER_WITH_LOCATION_AND_DATE, projection,
+                        sLocationSettingAndDaySelection, sortOrder),
+                new String[]{locationSetting, Long.toString(date)});
+    }
+
+    /*
+        The joined weather/location queries are only ever asked for with a handful of fixed
+        projections (the forecast list, the detail view, the widgets and the notifications), so
+        rather than having SQLiteQueryBuilder rebuild the same SQL string on every query we build
+        it once per (uri match, selection, projection, sort order) and keep it around.
+     */
+    private final HashMap<JoinedQueryKey, String> mJoinedQueryCache =
+            new HashMap<JoinedQueryKey, String>();
+
+    // Reused for lookups so a cache hit doesn't allocate a key.  Only touched while holding the
+    // cache lock.
+    private final JoinedQueryKey mJoinedQueryProbe = new JoinedQueryKey();
+
+    String getJoinedQuerySql(int match, String[] projection, String selection, String sortOrder) {
+        synchronized (mJoinedQueryCache) {
+            mJoinedQueryProbe.set(match, projection, selection, sortOrder);
+            String sql = mJoinedQueryCache.get(mJoinedQueryProbe);
+            if (sql == null) {
+                // This matches what SQLiteQueryBuilder.query() generates for these queries.
+                sql = SQLiteQueryBuilder.buildQueryString(false,
+                        sWeatherByLocationSettingQueryBuilder.getTables(),
+                        projection,
+                        "(" + selection + ")",
+                        null,
+                        null,
+                        sortOrder,
+                        null);
+                JoinedQueryKey key = new JoinedQueryKey();
+                // Copy the projection in case the caller decides to reuse its array.
+                key.set(match, projection == null ? null : projection.clone(), selection, sortOrder);
+                mJoinedQueryCache.put(key, sql);
+            }
+            return sql;
+        }
+    }
+
+    int getJoinedQueryCacheSize() {
+        synchronized (mJoinedQueryCache) {
+            return mJoinedQueryCache.size();
+        }
+    }
+
+    private static final class JoinedQueryKey {
+        int mMatch;
+        String[] mProjection;
+        String mSelection;
+        String mSortOrder;
+        int mHashCode;
+
+        void set(int match, String[] projection, String selection, String sortOrder) {
+            mMatch = match;
+            mProjection = projection;
+            mSelection = selection;
+            mSortOrder = sortOrder;
+
+            int hash = match;
+            hash = 31 * hash + Arrays.hashCode(projection);
+            hash = 31 * hash + (selection == null ? 0 : selection.hashCode());
+            hash = 31 * hash + (sortOrder == null ? 0 : sortOrder.hashCode());
+            mHashCode = hash;
+        }
+
+        @Override
+        public int hashCode() {
+            return mHashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof JoinedQueryKey)) return false;
+            JoinedQueryKey other = (JoinedQueryKey) o;
+            return mMatch == other.mMatch
+                    && mHashCode == other.mHashCode
+                    && Arrays.equals(mProjection, other.mProjection)
+                    && (mSelection == null ? other.mSelection == null : mSelection.equals(other.mSelection))
+                    && (mSortOrder == null ? other.mSortOrder == null : mSortOrder.equals(other.mSortOrder));
+        }
     }
 
     /*
@@ -18,10 +18,10 @@ import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Debug;
 import android.preference.PreferenceManager;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
@@ -29,12 +29,18 @@ import android.support.v4.app.TaskStackBuilder;
 import android.text.format.Time;
 import android.util.Log;
 
-import com.bumptech.glide.Glide;
+import com.example.android.sunshine.common.WearConnectionManager;
 import com.example.android.sunshine.common.WearConnector;
+import com.example.android.sunshine.common.WearForecastPlanner;
+import com.example.android.sunshine.common.WearOutbox;
+import com.example.android.sunshine.common.WeatherPayload;
 import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.PayloadStateStore;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SettingsSnapshot;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArtRepository;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 
@@ -50,13 +56,22 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Vector;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
+    // The hash of today's weather in ACTION_DATA_UPDATED, so a widget showing only today can
+    // tell it has nothing new without querying
+    public static final String EXTRA_TODAY_HASH = "today_hash";
     // Interval at which to sync with the weather, in seconds.
     // 60 seconds (1 minute) * 180 = 3 hours
     public static final int SYNC_INTERVAL = 60 * 180;
@@ -87,26 +102,42 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
-    // This object handles the communication between the App and the wereable
-    private WearConnector mConnector;
+    // How long watch face updates wait for newer ones, so refreshes in a row are sent once
+    private static final long WEAR_OUTBOX_WINDOW_MILLIS = 5 * 1000;
+
+    // This object handles the communication between the App and the wereable, connecting
+    // only while there is something to send
+    private WearConnectionManager mWearConnection;
+    // The days on their way to the watch face, sent from mWearExecutor
+    private final WearOutbox<WearDay> mWearOutbox;
+    private final ScheduledExecutorService mWearExecutor = Executors.newSingleThreadScheduledExecutor();
+    // The hash of the last forecast posted to the outbox, remembered as delivered once the
+    // outbox has sent it
+    private volatile int mWearPostedHash;
+
+    // What was sent to the watch face, so only the days that changed are sent again
+    private final WearForecastPlanner mWearPlanner = new WearForecastPlanner();
+    // The art pack sent along with the days, null when the watch uses its own art
+    private String mWearArtPack;
 
     public SunshineSyncAdapter(final Context context, boolean autoInitialize) {
         super(context, autoInitialize);
 
-        // Creates the wereable connector object
-        mConnector = new WearConnector(context);
-        mConnector.connect(new WearConnector.ConnectionInterface() {
-
+        mWearConnection = new WearConnectionManager(context, new WearConnectionManager.Listener() {
             @Override
-            public void onConnected() {
-                Log.d("APP","onConnected");
+            public void onDropped(int count) {
+                // Make sure the next sync sends the watch face everything again
+                Log.e(LOG_TAG, "Connection Error: " + count + " days not sent to the watch face");
+                PayloadStateStore.getInstance(context).forget(PayloadStateStore.CONSUMER_WEAR);
+                mWearPlanner.reset();
             }
-
+        });
+        mWearOutbox = new WearOutbox<WearDay>(new WearNodeApi(), new WearOutbox.Scheduler() {
             @Override
-            public void onError(String error) {
-                Log.e("APP","Connection Error: " + error);
+            public void schedule(Runnable task, long delayMillis) {
+                mWearExecutor.schedule(task, delayMillis, TimeUnit.MILLISECONDS);
             }
-        });
+        }, WEAR_OUTBOX_WINDOW_MILLIS);
     }
 
     @Override
@@ -363,10 +394,20 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                         WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
                         new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
 
-                updateWidgets();
-                updateMuzei();
+                // Makes sure the art pack is on disk before everything below asks for it
+                WeatherArtRepository.getInstance(getContext()).prefetch();
+
+                // The widgets and the watch face show the whole forecast, Muzei only today's.
+                // The first day is today, see the dates above.
+                int settingsHash = 31 * SettingsSnapshot.get(getContext()).hashCode()
+                        + Locale.getDefault().hashCode();
+                int forecastHash = 31 * settingsHash + Arrays.hashCode(cvArray);
+                int todayHash = 31 * settingsHash + cvArray[0].hashCode();
+
+                updateWidgets(forecastHash, todayHash);
+                updateMuzei(todayHash);
                 notifyWeather();
-                notifyWatchFace();
+                notifyWatchFace(cvArray, forecastHash);
 
             }
 
@@ -380,62 +421,164 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
-    private void updateWidgets() {
+    private void updateWidgets(int payloadHash, int todayHash) {
         Context context = getContext();
+        PayloadStateStore stateStore = PayloadStateStore.getInstance(context);
+        if (stateStore.isDelivered(PayloadStateStore.CONSUMER_WIDGETS, payloadHash)) {
+            return;
+        }
         // Setting the package ensures that only components in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
-                .setPackage(context.getPackageName());
+                .setPackage(context.getPackageName())
+                .putExtra(EXTRA_TODAY_HASH, todayHash);
         context.sendBroadcast(dataUpdatedIntent);
+        stateStore.setDelivered(PayloadStateStore.CONSUMER_WIDGETS, payloadHash);
     }
 
-    private void updateMuzei() {
+    private void updateMuzei(int payloadHash) {
         // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
         // Muzei background on lower API level devices
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
             Context context = getContext();
+            PayloadStateStore stateStore = PayloadStateStore.getInstance(context);
+            if (stateStore.isDelivered(PayloadStateStore.CONSUMER_MUZEI, payloadHash)) {
+                return;
+            }
             context.startService(new Intent(ACTION_DATA_UPDATED)
                     .setClass(context, WeatherMuzeiSource.class));
+            stateStore.setDelivered(PayloadStateStore.CONSUMER_MUZEI, payloadHash);
         }
     }
 
-    private void notifyWatchFace () {
+    private void notifyWatchFace (ContentValues[] forecast, int payloadHash) {
 
         Context context = getContext();
-        String locationQuery = Utility.getPreferredLocation(context);
-
-        Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-        // we'll query our contentProvider, as always
-        Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-        if (cursor.moveToFirst()) {
-            int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-            double high = cursor.getDouble(INDEX_MAX_TEMP);
-            double low = cursor.getDouble(INDEX_MIN_TEMP);
-
-            Resources resources = context.getResources();
-            int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-            String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
-
-            // Retrieve the large icon
-            Bitmap thumbIcon;
-
-            try {
-                thumbIcon = Glide.with(context)
-                        .load(artUrl)
-                        .asBitmap()
-                        .error(artResourceId)
-                        .fitCenter()
-                        .into(resources.getDimensionPixelSize(R.dimen.watchface_icon), resources.getDimensionPixelSize(R.dimen.watchface_icon)).get();
-            } catch (InterruptedException | ExecutionException e) {
-                Log.e(LOG_TAG, "Error retrieving thumb icon from " + artUrl, e);
-                thumbIcon = BitmapFactory.decodeResource(resources, artResourceId);
-            }
 
-            // Sends the data through the wearable connector
-            mConnector.sendData(Utility.formatTemperature(context, high), Utility.formatTemperature(context, low), thumbIcon);
+        PayloadStateStore stateStore = PayloadStateStore.getInstance(context);
+        if (stateStore.isDelivered(PayloadStateStore.CONSUMER_WEAR, payloadHash)) {
+            return;
+        }
+
+        long cpuStartNanos = Debug.threadCpuTimeNanos();
+        SettingsSnapshot settings = SettingsSnapshot.get(context);
+
+        // The watch has the Sunshine art, custom art is only sent if the user asked for it
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        boolean sendArt = !settings.usingLocalGraphics && prefs.getBoolean(
+                context.getString(R.string.pref_wear_custom_art_key),
+                Boolean.parseBoolean(context.getString(R.string.pref_wear_custom_art_default)));
+        String wearArtPack = sendArt ? settings.artPack : null;
+        if (wearArtPack == null ? mWearArtPack != null : !wearArtPack.equals(mWearArtPack)) {
+            // Days that didn't change still need their art sent, or taken away
+            mWearPlanner.reset();
+            mWearArtPack = wearArtPack;
+        }
+
+        // The watch looks days up by their Julian day, so it finds today's even after midnight
+        Time time = new Time();
+        time.setToNow();
+        List<WeatherPayload> days = new ArrayList<WeatherPayload>(forecast.length);
+        for (ContentValues values : forecast) {
+            long date = values.getAsLong(WeatherContract.WeatherEntry.COLUMN_DATE);
+            days.add(new WeatherPayload(Time.getJulianDay(date, time.gmtoff),
+                    values.getAsInteger(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP),
+                    values.getAsDouble(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP),
+                    settings.metric));
+        }
+
+        // Only the days that changed since the last sync are sent, through the outbox
+        WearTransport transport = new WearTransport(sendArt);
+        int sent = mWearPlanner.send(days, transport);
+        if (BuildConfig.DEBUG) {
+            Log.d(LOG_TAG, "Queued " + sent + " of " + days.size() + " days for the watch face, "
+                    + (Debug.threadCpuTimeNanos() - cpuStartNanos) / 1000 + "us of CPU, "
+                    + mWearOutbox.getMetrics());
         }
 
+        // Only delivered once it's been sent, the process may not live to the end of the window.
+        // Until then nothing is, so a watch connecting to a new process asks for a sync.
+        mWearPostedHash = payloadHash;
+        if (!mWearOutbox.hasPending()) {
+            stateStore.setDelivered(PayloadStateStore.CONSUMER_WEAR, payloadHash);
+        } else {
+            stateStore.forget(PayloadStateStore.CONSUMER_WEAR);
+        }
+    }
+
+    /**
+     * Sends the days waiting for the watch, now that it connected.
+     * @return false if none were waiting
+     */
+    boolean onWatchConnected() {
+        if (!mWearOutbox.hasPending()) {
+            return false;
+        }
+        mWearOutbox.onNodeConnected();
+        return true;
+    }
+
+    /**
+     * A day on its way to the watch face.  The art, which takes a while to load and compress, is
+     * only added when it's sent, so a day replaced in the outbox never costs anything.
+     */
+    private static class WearDay {
+        final int slot;
+        final WeatherPayload day;
+        final boolean sendArt;
+
+        WearDay(int slot, WeatherPayload day, boolean sendArt) {
+            this.slot = slot;
+            this.day = day;
+            this.sendArt = sendArt;
+        }
+    }
+
+    /**
+     * Queues the days in the outbox.
+     */
+    private class WearTransport implements WearForecastPlanner.Transport {
+        private final boolean mSendArt;
+
+        WearTransport(boolean sendArt) {
+            mSendArt = sendArt;
+        }
+
+        @Override
+        public int sendDay(int slot, WeatherPayload day) {
+            mWearOutbox.post(WearConnector.getDayPath(slot), new WearDay(slot, day, mSendArt));
+            return 0;
+        }
+    }
+
+    /**
+     * Sends the days from the outbox through the wearable connection, with the art if it's sent
+     * at all.
+     */
+    private class WearNodeApi implements WearOutbox.NodeApi<WearDay> {
+
+        @Override
+        public boolean isNodeConnected() {
+            return mWearConnection.isNodeConnected();
+        }
+
+        @Override
+        public int send(String path, WearDay wearDay) {
+            Bitmap thumbIcon = null;
+            if (wearDay.sendArt) {
+                int iconSize = getContext().getResources().getDimensionPixelSize(R.dimen.watchface_icon);
+                thumbIcon = WeatherArtRepository.getInstance(getContext())
+                        .getArt(wearDay.day.weatherId, iconSize, iconSize);
+            }
+            return mWearConnection.send(WearConnector.createDayRequest(wearDay.slot, wearDay.day,
+                    thumbIcon));
+        }
+
+        @Override
+        public void onFlushed() {
+            PayloadStateStore.getInstance(getContext())
+                    .setDelivered(PayloadStateStore.CONSUMER_WEAR, mWearPostedHash);
+        }
     }
 
     private void notifyWeather() {
@@ -468,8 +611,6 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
-                    int artResourceId = Utility.getArtResourceForWeatherCondition(weatherId);
-                    String artUrl = Utility.getArtUrlForWeatherCondition(context, weatherId);
 
                     // On Honeycomb and higher devices, we can retrieve the size of the large icon
                     // Prior to that, we use a fixed size
@@ -483,18 +624,8 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                             : resources.getDimensionPixelSize(R.dimen.notification_large_icon_default);
 
                     // Retrieve the large icon
-                    Bitmap largeIcon;
-                    try {
-                        largeIcon = Glide.with(context)
-                                .load(artUrl)
-                                .asBitmap()
-                                .error(artResourceId)
-                                .fitCenter()
-                                .into(largeIconWidth, largeIconHeight).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + artUrl, e);
-                        largeIcon = BitmapFactory.decodeResource(resources, artResourceId);
-                    }
+                    Bitmap largeIcon = WeatherArtRepository.getInstance(context)
+                            .getArt(weatherId, largeIconWidth, largeIconHeight);
                     String title = context.getString(R.string.app_name);
 
                     // Define the text of the forecast.
@@ -19,6 +19,15 @@ public class SunshineSyncService extends Service {
         }
     }
 
+    /**
+     * @return the sync adapter, or null if it wasn't created in this process
+     */
+    static SunshineSyncAdapter getSyncAdapter() {
+        synchronized (sSyncAdapterLock) {
+            return sSunshineSyncAdapter;
+        }
+    }
+
     @Override
     public IBinder onBind(Intent intent) {
         return sSunshineSyncAdapter.getSyncAdapterBinder();
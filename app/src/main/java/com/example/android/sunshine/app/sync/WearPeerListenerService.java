@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import com.example.android.sunshine.app.PayloadStateStore;
+import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.WearableListenerService;
+
+/**
+ * Hears the watch connecting, even while the phone holds no connection to it, so the watch face
+ * gets what it missed as soon as it's back instead of on the next sync.
+ *
+ * The days waiting in this process's outbox are sent right away.  If the process doesn't have
+ * them, e.g. it died before sending them, and the last forecast wasn't delivered, a sync is asked
+ * for to send it.
+ */
+public class WearPeerListenerService extends WearableListenerService {
+
+    private static final String LOG_TAG = WearPeerListenerService.class.getSimpleName();
+
+    @Override
+    public void onPeerConnected(Node peer) {
+        SunshineSyncAdapter syncAdapter = SunshineSyncService.getSyncAdapter();
+        if (syncAdapter != null && syncAdapter.onWatchConnected()) {
+            Log.d(LOG_TAG, "Watch connected, sending the days waiting for it");
+            return;
+        }
+        if (!PayloadStateStore.getInstance(this).hasDelivered(PayloadStateStore.CONSUMER_WEAR)) {
+            Log.d(LOG_TAG, "Watch connected without the last forecast, syncing");
+            SunshineSyncAdapter.syncImmediately(this);
+        }
+    }
+}
@@ -7,19 +7,19 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Binder;
 import android.os.Build;
+import android.os.Parcel;
 import android.util.Log;
+import android.util.SparseArray;
 import android.widget.AdapterView;
 import android.widget.RemoteViews;
 import android.widget.RemoteViewsService;
 
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.target.Target;
+import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.R;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.WeatherArtRepository;
 import com.example.android.sunshine.app.data.WeatherContract;
 
-import java.util.concurrent.ExecutionException;
-
 /**
  * RemoteViewsService controlling the data being shown in the scrollable weather detail widget
  */
@@ -45,7 +45,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
     @Override
     public RemoteViewsFactory onGetViewFactory(Intent intent) {
         return new RemoteViewsFactory() {
-            private Cursor data = null;
+            // The rows, built in onDataSetChanged so getViewAt only has to look them up
+            private volatile RemoteViews[] rows = new RemoteViews[0];
+            private volatile long[] rowIds = new long[0];
 
             @Override
             public void onCreate() {
@@ -54,9 +56,6 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public void onDataSetChanged() {
-                if (data != null) {
-                    data.close();
-                }
                 // This method is called by the app hosting the widget (e.g., the launcher)
                 // However, our ContentProvider is not exported so it doesn't have access to the
                 // data. Therefore we need to clear (and finally restore) the calling identity so
@@ -65,83 +64,115 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
                 String location = Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
                 Uri weatherForLocationUri = WeatherContract.WeatherEntry
                         .buildWeatherLocationWithStartDate(location, System.currentTimeMillis());
-                data = getContentResolver().query(weatherForLocationUri,
+                Cursor data = getContentResolver().query(weatherForLocationUri,
                         FORECAST_COLUMNS,
                         null,
                         null,
                         WeatherContract.WeatherEntry.COLUMN_DATE + " ASC");
                 Binder.restoreCallingIdentity(identityToken);
+
+                if (data == null) {
+                    rows = new RemoteViews[0];
+                    rowIds = new long[0];
+                    return;
+                }
+                try {
+                    buildRows(data, location);
+                } finally {
+                    data.close();
+                }
+            }
+
+            /**
+             * Builds every row up front, on the binder thread this is called on.  The art is
+             * fetched once per condition, already scaled down to the size of the icon, so that
+             * each row only sends an icon sized bitmap to the widget host.
+             */
+            private void buildRows(Cursor data, String locationSetting) {
+                int count = data.getCount();
+                RemoteViews[] newRows = new RemoteViews[count];
+                long[] newRowIds = new long[count];
+
+                boolean usingLocalGraphics =
+                        Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this);
+                WeatherArtRepository artRepository =
+                        WeatherArtRepository.getInstance(DetailWidgetRemoteViewsService.this);
+                int iconSize = getResources().getDimensionPixelSize(R.dimen.list_icon);
+                SparseArray<Bitmap> artByCondition = new SparseArray<Bitmap>();
+
+                for (int position = 0; position < count && data.moveToPosition(position); position++) {
+                    RemoteViews views = new RemoteViews(getPackageName(),
+                            R.layout.widget_detail_list_item);
+                    int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
+                    int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
+                    Bitmap weatherArtImage = null;
+                    if ( !usingLocalGraphics ) {
+                        weatherArtImage = artByCondition.get(weatherId);
+                        if (weatherArtImage == null) {
+                            weatherArtImage = artRepository.getArt(weatherId, iconSize, iconSize);
+                            artByCondition.put(weatherId, weatherArtImage);
+                        }
+                    }
+                    String description = data.getString(INDEX_WEATHER_DESC);
+                    long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
+                    String formattedDate = Utility.getFriendlyDayString(
+                            DetailWidgetRemoteViewsService.this, dateInMillis, false);
+                    double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
+                    double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
+                    String formattedMaxTemperature =
+                            Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
+                    String formattedMinTemperature =
+                            Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
+                    if (weatherArtImage != null) {
+                        views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
+                    } else {
+                        views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
+                    }
+                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+                        setRemoteContentDescription(views, description);
+                    }
+                    views.setTextViewText(R.id.widget_date, formattedDate);
+                    views.setTextViewText(R.id.widget_description, description);
+                    views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
+                    views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
+
+                    final Intent fillInIntent = new Intent();
+                    Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
+                            locationSetting,
+                            dateInMillis);
+                    fillInIntent.setData(weatherUri);
+                    views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
+
+                    newRows[position] = views;
+                    newRowIds[position] = data.getLong(INDEX_WEATHER_ID);
+                }
+
+                if (BuildConfig.DEBUG) {
+                    Log.d(LOG_TAG, "Detail widget refresh: " + count + " rows, " +
+                            getParcelledSize(newRows) + " bytes sent to the widget host");
+                }
+                rows = newRows;
+                rowIds = newRowIds;
             }
 
             @Override
             public void onDestroy() {
-                if (data != null) {
-                    data.close();
-                    data = null;
-                }
+                rows = new RemoteViews[0];
+                rowIds = new long[0];
             }
 
             @Override
             public int getCount() {
-                return data == null ? 0 : data.getCount();
+                return rows.length;
             }
 
             @Override
             public RemoteViews getViewAt(int position) {
-                if (position == AdapterView.INVALID_POSITION ||
-                        data == null || !data.moveToPosition(position)) {
+                RemoteViews[] currentRows = rows;
+                if (position == AdapterView.INVALID_POSITION || position >= currentRows.length) {
                     return null;
                 }
-                RemoteViews views = new RemoteViews(getPackageName(),
-                        R.layout.widget_detail_list_item);
-                int weatherId = data.getInt(INDEX_WEATHER_CONDITION_ID);
-                int weatherArtResourceId = Utility.getIconResourceForWeatherCondition(weatherId);
-                Bitmap weatherArtImage = null;
-                if ( !Utility.usingLocalGraphics(DetailWidgetRemoteViewsService.this) ) {
-                    String weatherArtResourceUrl = Utility.getArtUrlForWeatherCondition(
-                            DetailWidgetRemoteViewsService.this, weatherId);
-                    try {
-                        weatherArtImage = Glide.with(DetailWidgetRemoteViewsService.this)
-                                .load(weatherArtResourceUrl)
-                                .asBitmap()
-                                .error(weatherArtResourceId)
-                                .into(Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL).get();
-                    } catch (InterruptedException | ExecutionException e) {
-                        Log.e(LOG_TAG, "Error retrieving large icon from " + weatherArtResourceUrl, e);
-                    }
-                }
-                String description = data.getString(INDEX_WEATHER_DESC);
-                long dateInMillis = data.getLong(INDEX_WEATHER_DATE);
-                String formattedDate = Utility.getFriendlyDayString(
-                        DetailWidgetRemoteViewsService.this, dateInMillis, false);
-                double maxTemp = data.getDouble(INDEX_WEATHER_MAX_TEMP);
-                double minTemp = data.getDouble(INDEX_WEATHER_MIN_TEMP);
-                String formattedMaxTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, maxTemp);
-                String formattedMinTemperature =
-                        Utility.formatTemperature(DetailWidgetRemoteViewsService.this, minTemp);
-                if (weatherArtImage != null) {
-                    views.setImageViewBitmap(R.id.widget_icon, weatherArtImage);
-                } else {
-                    views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-                }
-                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                    setRemoteContentDescription(views, description);
-                }
-                views.setTextViewText(R.id.widget_date, formattedDate);
-                views.setTextViewText(R.id.widget_description, description);
-                views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-                views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-                final Intent fillInIntent = new Intent();
-                String locationSetting =
-                        Utility.getPreferredLocation(DetailWidgetRemoteViewsService.this);
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(
-                        locationSetting,
-                        dateInMillis);
-                fillInIntent.setData(weatherUri);
-                views.setOnClickFillInIntent(R.id.widget_list_item, fillInIntent);
-                return views;
+                return currentRows[position];
             }
 
             @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
@@ -161,8 +192,9 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
 
             @Override
             public long getItemId(int position) {
-                if (data.moveToPosition(position))
-                    return data.getLong(INDEX_WEATHER_ID);
+                long[] currentRowIds = rowIds;
+                if (position >= 0 && position < currentRowIds.length)
+                    return currentRowIds[position];
                 return position;
             }
 
@@ -172,4 +204,18 @@ public class DetailWidgetRemoteViewsService extends RemoteViewsService {
             }
         };
     }
+
+    /**
+     * @return how many bytes the rows take once marshalled for the widget host.
+     */
+    static int getParcelledSize(RemoteViews[] rows) {
+        int bytes = 0;
+        for (RemoteViews row : rows) {
+            Parcel parcel = Parcel.obtain();
+            row.writeToParcel(parcel, 0);
+            bytes += parcel.dataSize();
+            parcel.recycle();
+        }
+        return bytes;
+    }
 }
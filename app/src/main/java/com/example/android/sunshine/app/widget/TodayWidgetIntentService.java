@@ -15,24 +15,17 @@
  */
 package com.example.android.sunshine.app.widget;
 
-import android.annotation.TargetApi;
 import android.app.IntentService;
-import android.app.PendingIntent;
 import android.appwidget.AppWidgetManager;
 import android.content.ComponentName;
 import android.content.Intent;
 import android.database.Cursor;
 import android.net.Uri;
-import android.os.Build;
-import android.os.Bundle;
-import android.util.DisplayMetrics;
-import android.util.TypedValue;
-import android.widget.RemoteViews;
 
-import com.example.android.sunshine.app.MainActivity;
-import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.PayloadStateStore;
 import com.example.android.sunshine.app.Utility;
 import com.example.android.sunshine.app.data.WeatherContract;
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
  * IntentService which handles updating all Today widgets with the latest data
@@ -50,6 +43,10 @@ public class TodayWidgetIntentService extends IntentService {
     private static final int INDEX_MAX_TEMP = 2;
     private static final int INDEX_MIN_TEMP = 3;
 
+    // Set when the widget host asked for the update, so the widgets are updated even if the
+    // weather hasn't changed since the last one
+    static final String EXTRA_FORCE_UPDATE = "force_update";
+
     public TodayWidgetIntentService() {
         super("TodayWidgetIntentService");
     }
@@ -60,6 +57,21 @@ public class TodayWidgetIntentService extends IntentService {
         AppWidgetManager appWidgetManager = AppWidgetManager.getInstance(this);
         int[] appWidgetIds = appWidgetManager.getAppWidgetIds(new ComponentName(this,
                 TodayWidgetProvider.class));
+        if (appWidgetIds.length == 0) {
+            return;
+        }
+
+        // A sync says which weather it brought, if the widgets already show it there's no need
+        // to even query.  Updates without the hash always query, and the next sync is checked
+        // against what they render.
+        boolean force = intent != null && intent.getBooleanExtra(EXTRA_FORCE_UPDATE, false);
+        PayloadStateStore stateStore = PayloadStateStore.getInstance(this);
+        boolean hashed = intent != null && intent.hasExtra(SunshineSyncAdapter.EXTRA_TODAY_HASH);
+        int todayHash = hashed ? intent.getIntExtra(SunshineSyncAdapter.EXTRA_TODAY_HASH, 0) : 0;
+        if (hashed && !force
+                && stateStore.isDelivered(PayloadStateStore.CONSUMER_TODAY_WIDGET, todayHash)) {
+            return;
+        }
 
         // Get today's data from the ContentProvider
         String location = Utility.getPreferredLocation(this);
@@ -85,67 +97,13 @@ public class TodayWidgetIntentService extends IntentService {
         String formattedMinTemperature = Utility.formatTemperature(this, minTemp);
         data.close();
 
-        // Perform this loop procedure for each Today widget
-        for (int appWidgetId : appWidgetIds) {
-            // Find the correct layout based on the widget's width
-            int widgetWidth = getWidgetWidth(appWidgetManager, appWidgetId);
-            int defaultWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-            int largeWidth = getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
-            int layoutId;
-            if (widgetWidth >= largeWidth) {
-                layoutId = R.layout.widget_today_large;
-            } else if (widgetWidth >= defaultWidth) {
-                layoutId = R.layout.widget_today;
-            } else {
-                layoutId = R.layout.widget_today_small;
-            }
-            RemoteViews views = new RemoteViews(getPackageName(), layoutId);
-
-            // Add the data to the RemoteViews
-            views.setImageViewResource(R.id.widget_icon, weatherArtResourceId);
-            // Content Descriptions for RemoteViews were only added in ICS MR1
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
-                setRemoteContentDescription(views, description);
-            }
-            views.setTextViewText(R.id.widget_description, description);
-            views.setTextViewText(R.id.widget_high_temperature, formattedMaxTemperature);
-            views.setTextViewText(R.id.widget_low_temperature, formattedMinTemperature);
-
-            // Create an Intent to launch MainActivity
-            Intent launchIntent = new Intent(this, MainActivity.class);
-            PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, launchIntent, 0);
-            views.setOnClickPendingIntent(R.id.widget, pendingIntent);
-
-            // Tell the AppWidgetManager to perform an update on the current app widget
-            appWidgetManager.updateAppWidget(appWidgetId, views);
+        TodayWidgetRenderer.Content content = new TodayWidgetRenderer.Content(
+                weatherArtResourceId, description, formattedMaxTemperature, formattedMinTemperature);
+        new TodayWidgetRenderer(this, appWidgetManager).render(appWidgetIds, content, force);
+        if (hashed) {
+            stateStore.setDelivered(PayloadStateStore.CONSUMER_TODAY_WIDGET, todayHash);
+        } else {
+            stateStore.forget(PayloadStateStore.CONSUMER_TODAY_WIDGET);
         }
     }
-
-    private int getWidgetWidth(AppWidgetManager appWidgetManager, int appWidgetId) {
-        // Prior to Jelly Bean, widgets were always their default size
-        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
-            return getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-        }
-        // For Jelly Bean and higher devices, widgets can be resized - the current size can be
-        // retrieved from the newly added App Widget Options
-        return getWidgetWidthFromOptions(appWidgetManager, appWidgetId);
-    }
-
-    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
-    private int getWidgetWidthFromOptions(AppWidgetManager appWidgetManager, int appWidgetId) {
-        Bundle options = appWidgetManager.getAppWidgetOptions(appWidgetId);
-        if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
-            int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
-            // The width returned is in dp, but we'll convert it to pixels to match the other widths
-            DisplayMetrics displayMetrics = getResources().getDisplayMetrics();
-            return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
-                    displayMetrics);
-        }
-        return  getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
-    }
-
-    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
-    private void setRemoteContentDescription(RemoteViews views, String description) {
-        views.setContentDescription(R.id.widget_icon, description);
-    }
 }
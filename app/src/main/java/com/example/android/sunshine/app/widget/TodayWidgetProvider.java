@@ -34,20 +34,28 @@ public class TodayWidgetProvider extends AppWidgetProvider {
 
     @Override
     public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        // The host may have nothing to show (e.g. after a reboot), so always push the views
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(TodayWidgetIntentService.EXTRA_FORCE_UPDATE, true));
     }
 
     @Override
     public void onAppWidgetOptionsChanged(Context context, AppWidgetManager appWidgetManager,
                                           int appWidgetId, Bundle newOptions) {
-        context.startService(new Intent(context, TodayWidgetIntentService.class));
+        context.startService(new Intent(context, TodayWidgetIntentService.class)
+                .putExtra(TodayWidgetIntentService.EXTRA_FORCE_UPDATE, true));
     }
 
     @Override
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            Intent updateIntent = new Intent(context, TodayWidgetIntentService.class);
+            if (intent.hasExtra(SunshineSyncAdapter.EXTRA_TODAY_HASH)) {
+                updateIntent.putExtra(SunshineSyncAdapter.EXTRA_TODAY_HASH,
+                        intent.getIntExtra(SunshineSyncAdapter.EXTRA_TODAY_HASH, 0));
+            }
+            context.startService(updateIntent);
         }
     }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.widget;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.util.TypedValue;
+import android.widget.RemoteViews;
+
+import com.example.android.sunshine.app.MainActivity;
+import com.example.android.sunshine.app.PayloadStateStore;
+import com.example.android.sunshine.app.R;
+
+import java.util.Arrays;
+
+/**
+ * Renders today's weather into every Today widget.
+ *
+ * Widgets only differ by the layout their width calls for, so they are grouped into the small,
+ * default and large layouts and each layout's {@link RemoteViews} is built once and pushed to all
+ * of the widgets using it in a single update.  The hash of what was last pushed to each layout is
+ * kept in the {@link PayloadStateStore}, and a layout whose content and widgets haven't changed
+ * isn't pushed again.
+ */
+class TodayWidgetRenderer {
+    private static final String LOG_TAG = TodayWidgetRenderer.class.getSimpleName();
+
+    static final int[] LAYOUTS = {
+            R.layout.widget_today_small,
+            R.layout.widget_today,
+            R.layout.widget_today_large
+    };
+
+    /**
+     * Today's weather, formatted for the widget.
+     */
+    static class Content {
+        final int weatherArtResourceId;
+        final String description;
+        final String formattedMaxTemperature;
+        final String formattedMinTemperature;
+
+        Content(int weatherArtResourceId, String description, String formattedMaxTemperature,
+                String formattedMinTemperature) {
+            this.weatherArtResourceId = weatherArtResourceId;
+            this.description = description;
+            this.formattedMaxTemperature = formattedMaxTemperature;
+            this.formattedMinTemperature = formattedMinTemperature;
+        }
+
+        int contentHash() {
+            int hash = weatherArtResourceId;
+            hash = 31 * hash + (description != null ? description.hashCode() : 0);
+            hash = 31 * hash + formattedMaxTemperature.hashCode();
+            hash = 31 * hash + formattedMinTemperature.hashCode();
+            return hash;
+        }
+    }
+
+    private final Context mContext;
+    private final AppWidgetManager mAppWidgetManager;
+    private final PayloadStateStore mState;
+
+    TodayWidgetRenderer(Context context, AppWidgetManager appWidgetManager) {
+        mContext = context;
+        mAppWidgetManager = appWidgetManager;
+        mState = PayloadStateStore.getInstance(context);
+    }
+
+    /**
+     * Pushes the content to the widgets.
+     *
+     * @param force push even if the widgets already show this content, e.g. when the host asked
+     *              for an update and may have lost what it had
+     * @return how many widgets were updated
+     */
+    int render(int[] appWidgetIds, Content content, boolean force) {
+        int[][] buckets = groupByLayout(appWidgetIds);
+        int contentHash = content.contentHash();
+        int updated = 0;
+
+        for (int i = 0; i < LAYOUTS.length; i++) {
+            int[] ids = buckets[i];
+            int layoutId = LAYOUTS[i];
+            String consumer = PayloadStateStore.CONSUMER_TODAY_WIDGET + '_' + i;
+            if (ids.length == 0) {
+                continue;
+            }
+
+            // Which widgets use the layout is part of the hash, so a new or resized widget
+            // is always pushed to
+            int hash = 31 * contentHash + Arrays.hashCode(ids);
+            if (!force && mState.isDelivered(consumer, hash)) {
+                continue;
+            }
+
+            mAppWidgetManager.updateAppWidget(ids, buildViews(layoutId, content));
+            updated += ids.length;
+            mState.setDelivered(consumer, hash);
+        }
+
+        Log.d(LOG_TAG, "Updated " + updated + " of " + appWidgetIds.length + " Today widgets");
+        return updated;
+    }
+
+    private RemoteViews buildViews(int layoutId, Content content) {
+        RemoteViews views = new RemoteViews(mContext.getPackageName(), layoutId);
+
+        // Add the data to the RemoteViews
+        views.setImageViewResource(R.id.widget_icon, content.weatherArtResourceId);
+        // Content Descriptions for RemoteViews were only added in ICS MR1
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1) {
+            setRemoteContentDescription(views, content.description);
+        }
+        views.setTextViewText(R.id.widget_description, content.description);
+        views.setTextViewText(R.id.widget_high_temperature, content.formattedMaxTemperature);
+        views.setTextViewText(R.id.widget_low_temperature, content.formattedMinTemperature);
+
+        // Create an Intent to launch MainActivity
+        Intent launchIntent = new Intent(mContext, MainActivity.class);
+        PendingIntent pendingIntent = PendingIntent.getActivity(mContext, 0, launchIntent, 0);
+        views.setOnClickPendingIntent(R.id.widget, pendingIntent);
+        return views;
+    }
+
+    /**
+     * @return the widget ids for each of {@link #LAYOUTS}, sorted.
+     */
+    int[][] groupByLayout(int[] appWidgetIds) {
+        int[] layoutIndexes = new int[appWidgetIds.length];
+        int[] counts = new int[LAYOUTS.length];
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            layoutIndexes[i] = getLayoutIndex(getWidgetWidth(appWidgetIds[i]));
+            counts[layoutIndexes[i]]++;
+        }
+
+        int[][] buckets = new int[LAYOUTS.length][];
+        for (int i = 0; i < LAYOUTS.length; i++) {
+            buckets[i] = new int[counts[i]];
+            counts[i] = 0;
+        }
+        for (int i = 0; i < appWidgetIds.length; i++) {
+            int layoutIndex = layoutIndexes[i];
+            buckets[layoutIndex][counts[layoutIndex]++] = appWidgetIds[i];
+        }
+        for (int[] bucket : buckets) {
+            Arrays.sort(bucket);
+        }
+        return buckets;
+    }
+
+    /**
+     * Finds the correct layout based on the widget's width.
+     */
+    int getLayoutIndex(int widgetWidth) {
+        int defaultWidth = mContext.getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        int largeWidth = mContext.getResources().getDimensionPixelSize(R.dimen.widget_today_large_width);
+        if (widgetWidth >= largeWidth) {
+            return 2;
+        } else if (widgetWidth >= defaultWidth) {
+            return 1;
+        } else {
+            return 0;
+        }
+    }
+
+    private int getWidgetWidth(int appWidgetId) {
+        // Prior to Jelly Bean, widgets were always their default size
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            return mContext.getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+        }
+        // For Jelly Bean and higher devices, widgets can be resized - the current size can be
+        // retrieved from the newly added App Widget Options
+        return getWidgetWidthFromOptions(appWidgetId);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private int getWidgetWidthFromOptions(int appWidgetId) {
+        Bundle options = mAppWidgetManager.getAppWidgetOptions(appWidgetId);
+        if (options.containsKey(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH)) {
+            int minWidthDp = options.getInt(AppWidgetManager.OPTION_APPWIDGET_MIN_WIDTH);
+            // The width returned is in dp, but we'll convert it to pixels to match the other widths
+            DisplayMetrics displayMetrics = mContext.getResources().getDisplayMetrics();
+            return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, minWidthDp,
+                    displayMetrics);
+        }
+        return mContext.getResources().getDimensionPixelSize(R.dimen.widget_today_default_width);
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH_MR1)
+    private void setRemoteContentDescription(RemoteViews views, String description) {
+        views.setContentDescription(R.id.widget_icon, description);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.android.sunshine.common;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembers which version of each data item was delivered, so an item that arrives both from the
+ * fetch on connect and as a change event, or is fetched again on the next connect, is only
+ * delivered once.
+ *
+ * A version is anything that's different whenever the item's content is, e.g. its data and
+ * asset ids, and it's compared byte for byte, so two versions can't be mistaken for each other
+ * the way two hashes can.  This has no Android dependencies.
+ */
+public class DataItemVersions {
+
+    private final Map<String, byte[]> mVersions = new HashMap<String, byte[]>();
+    private int mDuplicates;
+
+    /**
+     * Records the version of the item at the path.
+     * @return true if it's a version that wasn't delivered before, false for a duplicate
+     */
+    public synchronized boolean markDelivered(String path, byte[] version) {
+        byte[] delivered = mVersions.put(path, version);
+        if (Arrays.equals(delivered, version)) {
+            mDuplicates++;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return how many duplicates {@link #markDelivered} turned away
+     */
+    public synchronized int getDuplicates() {
+        return mDuplicates;
+    }
+}
@@ -1,28 +1,16 @@
 package com.example.android.sunshine.common;
 
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.os.AsyncTask;
 
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.Wearable;
 
 import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Created by gabrielmarcos on 2/2/16.
  */
 public class Utility {
 
-    public interface LoadBitmapListener {
-        void onError(String error);
-        void onBitmapLoaded(Bitmap bitmap);
-    }
-
     /**
      * Converts a bitmap to an Asset object, this is used for sending the
      * weather icon to the watchface
@@ -30,50 +18,19 @@ public class Utility {
      * @return
      */
     static public Asset createAssetFromBitmap(Bitmap bitmap) {
-        final ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-        return Asset.createFromBytes(byteStream.toByteArray());
+        return Asset.createFromBytes(compressBitmap(bitmap));
     }
 
-    static public void loadBitmapFromAsset(final GoogleApiClient client, final Asset asset, final LoadBitmapListener listener) {
-
-        if (asset == null) {
-            listener.onError("Asset must not be null");
-        }
-
-        // The bitmap is loaded using an AsyncTask so it doesn't block the UI Thread
-        new AsyncTask<Void,Void,Bitmap>() {
-
-            @Override
-            protected Bitmap doInBackground(Void... voids) {
-
-                ConnectionResult result =
-                        client.blockingConnect(2000, TimeUnit.MILLISECONDS);
-                if (!result.isSuccess()) {
-                    return null;
-                }
-                // convert asset into a file descriptor and block until it's ready
-                InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                        client, asset).await().getInputStream();
-                client.disconnect();
-
-                if (assetInputStream == null) {
-                    return null;
-                }
-
-                // decode the stream into a bitmap
-                return BitmapFactory.decodeStream(assetInputStream);
-            }
-
-            @Override
-            protected void onPostExecute(Bitmap bitmap) {
-                if (bitmap == null) {
-                    listener.onError("Null Bitmap");
-                }else {
-                    listener.onBitmapLoaded(bitmap);
-                }
-            }
-        }.execute();
+    /**
+     * Compresses the bitmap as a PNG
+     * @param bitmap
+     * @return the PNG bytes
+     */
+    static public byte[] compressBitmap(Bitmap bitmap) {
+        final ByteArrayOutputStream byteStream =
+                new ByteArrayOutputStream(bitmap.getRowBytes() * bitmap.getHeight() / 4);
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
+        return byteStream.toByteArray();
     }
 
 }
@@ -0,0 +1,237 @@
+package com.example.android.sunshine.common;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.NodeApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the connection used to send data items to the watch.
+ *
+ * It connects when there is something to send, and data items sent while it's connecting are
+ * queued, keeping only the latest one for each path, and put once it's connected.  After
+ * {@link #IDLE_DISCONNECT_MILLIS} without anything to send, it disconnects again, even with no
+ * watch connected, so a phone without a watch in range doesn't hold the connection.
+ *
+ * Can be called from any thread; the connection callbacks run on the main thread.
+ */
+public class WearConnectionManager implements GoogleApiClient.ConnectionCallbacks,
+        GoogleApiClient.OnConnectionFailedListener {
+
+    private static final String TAG = "WEAR CONNECTION";
+
+    public static final long IDLE_DISCONNECT_MILLIS = 30 * 1000;
+
+    private static final long BLOCKING_CONNECT_MILLIS = 5 * 1000;
+
+    public interface Listener {
+        /**
+         * Called when queued data items couldn't be sent because the connection failed.
+         */
+        void onDropped(int count);
+    }
+
+    private final GoogleApiClient mGoogleApiClient;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final Listener mListener;
+
+    // Waiting for the connection, by path
+    private final LinkedHashMap<String, PutDataRequest> mQueue = new LinkedHashMap<String, PutDataRequest>();
+    private boolean mConnecting;
+    private long mConnectStartMillis;
+
+    // Metrics
+    private int mQueuedCount;
+    private int mSentCount;
+    private int mSupersededCount;
+    private int mDroppedCount;
+    private long mLastConnectLatencyMillis = -1;
+
+    private final Runnable mIdleDisconnect = new Runnable() {
+        @Override
+        public void run() {
+            disconnectIfIdle();
+        }
+    };
+
+    public WearConnectionManager(Context context, Listener listener) {
+        mListener = listener;
+        mGoogleApiClient = new GoogleApiClient.Builder(context.getApplicationContext())
+                .addConnectionCallbacks(this)
+                .addOnConnectionFailedListener(this)
+                .addApi(Wearable.API)
+                .build();
+    }
+
+    /**
+     * Puts the data item, right away if connected, once connected otherwise.  A data item still
+     * waiting for the connection is replaced by a newer one for the same path.
+     *
+     * @return the number of bytes of data and assets in the data item
+     */
+    public synchronized int send(PutDataRequest request) {
+        if (mGoogleApiClient.isConnected()) {
+            put(request);
+        } else {
+            if (mQueue.put(request.getUri().getPath(), request) != null) {
+                // Never sent, the newer one has everything the watch needs
+                mSupersededCount++;
+            }
+            mQueuedCount++;
+            connect();
+        }
+        scheduleIdleDisconnect();
+        return getSize(request);
+    }
+
+    /**
+     * Checks whether a watch is connected, connecting first if needed.  This stays connected for
+     * the idle time afterwards like after a send.  Blocks, so don't call it from the main thread.
+     */
+    public boolean isNodeConnected() {
+        if (!mGoogleApiClient.isConnected()) {
+            synchronized (this) {
+                mConnectStartMillis = SystemClock.elapsedRealtime();
+            }
+            ConnectionResult result = mGoogleApiClient.blockingConnect(BLOCKING_CONNECT_MILLIS,
+                    TimeUnit.MILLISECONDS);
+            if (!result.isSuccess()) {
+                return false;
+            }
+        }
+        NodeApi.GetConnectedNodesResult nodes = Wearable.NodeApi.getConnectedNodes(mGoogleApiClient)
+                .await(BLOCKING_CONNECT_MILLIS, TimeUnit.MILLISECONDS);
+        boolean connected = nodes.getStatus().isSuccess() && !nodes.getNodes().isEmpty();
+        scheduleIdleDisconnect();
+        return connected;
+    }
+
+    public synchronized int getQueuedCount() {
+        return mQueuedCount;
+    }
+
+    public synchronized int getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * @return how many queued data items were replaced by a newer one for the same path
+     */
+    public synchronized int getSupersededCount() {
+        return mSupersededCount;
+    }
+
+    /**
+     * @return how many queued data items were lost because the connection failed
+     */
+    public synchronized int getDroppedCount() {
+        return mDroppedCount;
+    }
+
+    /**
+     * @return how long the last connection took to come up, -1 if it never did.
+     */
+    public synchronized long getLastConnectLatencyMillis() {
+        return mLastConnectLatencyMillis;
+    }
+
+    public synchronized String getMetrics() {
+        return "queued " + mQueuedCount + ", sent " + mSentCount + ", superseded "
+                + mSupersededCount + ", dropped " + mDroppedCount
+                + ", last connect " + mLastConnectLatencyMillis + "ms";
+    }
+
+    private void connect() {
+        if (mConnecting || mGoogleApiClient.isConnecting()) {
+            return;
+        }
+        mConnecting = true;
+        mConnectStartMillis = SystemClock.elapsedRealtime();
+        mGoogleApiClient.connect();
+    }
+
+    private void put(PutDataRequest request) {
+        mSentCount++;
+        Wearable.DataApi.putDataItem(mGoogleApiClient, request).setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
+            @Override
+            public void onResult(DataApi.DataItemResult dataItemResult) {
+                if (dataItemResult.getStatus().isSuccess()) {
+                    Log.d(TAG,"on Message Sent");
+                }else {
+                    Log.d(TAG,"Error sending message to wereable");
+                }
+            }
+        });
+    }
+
+    private void scheduleIdleDisconnect() {
+        mHandler.removeCallbacks(mIdleDisconnect);
+        mHandler.postDelayed(mIdleDisconnect, IDLE_DISCONNECT_MILLIS);
+    }
+
+    private synchronized void disconnectIfIdle() {
+        if (mQueue.isEmpty() && mGoogleApiClient.isConnected()) {
+            Log.d(TAG, "Idle, disconnecting: " + getMetrics());
+            mGoogleApiClient.disconnect();
+        }
+    }
+
+    @Override
+    public void onConnected(Bundle bundle) {
+        synchronized (this) {
+            mConnecting = false;
+            mLastConnectLatencyMillis = SystemClock.elapsedRealtime() - mConnectStartMillis;
+            for (PutDataRequest request : mQueue.values()) {
+                put(request);
+            }
+            mQueue.clear();
+            Log.d(TAG, "onConnected Called: " + getMetrics());
+        }
+        scheduleIdleDisconnect();
+    }
+
+    @Override
+    public void onConnectionSuspended(int i) {
+        // The client connects again on its own, anything sent meanwhile is queued
+        Log.d(TAG,"onConnectionSuspended Called");
+    }
+
+    @Override
+    public void onConnectionFailed(ConnectionResult connectionResult) {
+        int dropped;
+        synchronized (this) {
+            mConnecting = false;
+            dropped = mQueue.size();
+            mDroppedCount += dropped;
+            mQueue.clear();
+            Log.d(TAG, "Connection Failed: " + connectionResult + ", " + getMetrics());
+        }
+        if (dropped > 0 && mListener != null) {
+            mListener.onDropped(dropped);
+        }
+    }
+
+    private static int getSize(PutDataRequest request) {
+        int size = request.getData() != null ? request.getData().length : 0;
+        for (Asset asset : request.getAssets().values()) {
+            if (asset.getData() != null) {
+                size += asset.getData().length;
+            }
+        }
+        return size;
+    }
+}
@@ -2,6 +2,7 @@ package com.example.android.sunshine.common;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.net.Uri;
 import android.os.Bundle;
 import android.util.Log;
 
@@ -13,12 +14,20 @@ import com.google.android.gms.wearable.DataApi;
 import com.google.android.gms.wearable.DataEvent;
 import com.google.android.gms.wearable.DataEventBuffer;
 import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemAsset;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.DataMap;
 import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.PutDataMapRequest;
 import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * Created by gabrielmarcos on 2/11/16.
  */
@@ -27,9 +36,9 @@ public class WearConnector implements DataApi.DataListener,
 
     private static final String TAG = "WEAR CONNECTOR";
 
-    private static final String DATA_PATH = "/sunshine_weather";
-    private static final String WEATHER_HIGH_PATH = "sunshine_weather_high";
-    private static final String WEATHER_LOW_PATH = "sunshine_weather_low";
+    // Each day of the forecast is in its own item, DAY_PATH_PREFIX + slot
+    private static final String DAY_PATH_PREFIX = "/sunshine_weather/day/";
+    private static final String WEATHER_PAYLOAD_PATH = "sunshine_payload";
     private static final String WEATHER_ICON_PATH = "sunshine_icon";
 
     public interface ConnectionInterface {
@@ -38,7 +47,12 @@ public class WearConnector implements DataApi.DataListener,
     }
 
     public interface SunshineDataInterface {
-        void onDataChanged(String highTemp, String lowTemp, Bitmap bitmap);
+        /**
+         * @param icon the art sent along with the weather, null when the watch should use
+         *             its own art for the condition.  It can be read with the connector's
+         *             client, see {@link #getGoogleApiClient()}
+         */
+        void onDataChanged(WeatherPayload payload, Asset icon);
         void onError(String error);
     }
 
@@ -48,6 +62,9 @@ public class WearConnector implements DataApi.DataListener,
     private Context mContext;
     private GoogleApiClient mGoogleApiClient;
 
+    // The days already delivered, kept across connections so fetching them again is cheap
+    private final DataItemVersions mDeliveredVersions = new DataItemVersions();
+
     public WearConnector(Context context) {
         this.mContext = context;
 
@@ -75,6 +92,17 @@ public class WearConnector implements DataApi.DataListener,
         }
     }
 
+    public boolean isConnected() {
+        return mGoogleApiClient != null && mGoogleApiClient.isConnected();
+    }
+
+    /**
+     * @return the connector's client, for reading the assets it hands out while it's connected
+     */
+    public GoogleApiClient getGoogleApiClient() {
+        return mGoogleApiClient;
+    }
+
     public void startListeningForData(SunshineDataInterface dataInterface) {
 
         this.mDataInterface = dataInterface;
@@ -102,58 +130,117 @@ public class WearConnector implements DataApi.DataListener,
         Log.d(TAG,"onDataChanged Called");
 
         for (DataEvent event : dataEventBuffer) {
-
-            DataItem item = event.getDataItem();
-
             // We only consider Data Changed events
-            if (DATA_PATH.equals(item.getUri().getPath()) && event.getType() == DataEvent.TYPE_CHANGED) {
-
-                DataMap map = DataMapItem.fromDataItem(item).getDataMap();
-                final String mHighTemperature = map.getString(WEATHER_HIGH_PATH);
-                final String mLowTemperature = map.getString(WEATHER_LOW_PATH);
-                Asset iconAsset = map.getAsset(WEATHER_ICON_PATH);
-
-                Utility.loadBitmapFromAsset(mGoogleApiClient, iconAsset, new Utility.LoadBitmapListener() {
-                    @Override
-                    public void onError(String error) {
-
-                    }
+            if (event.getType() == DataEvent.TYPE_CHANGED) {
+                deliverDay(event.getDataItem());
+            }
+        }
+    }
 
+    /**
+     * Delivers every day of the forecast the phone has sent so far, e.g. to catch up with what
+     * changed while the watch wasn't listening.  Days already delivered, by an earlier fetch or
+     * a change event, aren't delivered again.
+     */
+    public void fetchForecast() {
+        if (!isConnected()) {
+            return;
+        }
+        Uri uri = new Uri.Builder()
+                .scheme(PutDataRequest.WEAR_URI_SCHEME)
+                .path(DAY_PATH_PREFIX)
+                .build();
+        Wearable.DataApi.getDataItems(mGoogleApiClient, uri, DataApi.FILTER_PREFIX)
+                .setResultCallback(new ResultCallback<DataItemBuffer>() {
                     @Override
-                    public void onBitmapLoaded(Bitmap bitmap) {
-                        mDataInterface.onDataChanged(mHighTemperature, mLowTemperature, bitmap);
+                    public void onResult(DataItemBuffer dataItems) {
+                        try {
+                            if (!dataItems.getStatus().isSuccess()) {
+                                Log.d(TAG, "Couldn't fetch the forecast");
+                                return;
+                            }
+                            for (DataItem item : dataItems) {
+                                deliverDay(item);
+                            }
+                            Log.d(TAG, "Fetched " + dataItems.getCount() + " days, "
+                                    + mDeliveredVersions.getDuplicates() + " duplicates so far");
+                        } finally {
+                            dataItems.release();
+                        }
                     }
                 });
-            }
+    }
+
+    private void deliverDay(DataItem item) {
+        String path = item.getUri().getPath();
+        if (path == null || !path.startsWith(DAY_PATH_PREFIX)) {
+            return;
+        }
+        if (!mDeliveredVersions.markDelivered(path, getVersion(item))) {
+            return;
         }
+
+        DataMap map = DataMapItem.fromDataItem(item).getDataMap();
+        WeatherPayload payload = WeatherPayload.fromBytes(map.getByteArray(WEATHER_PAYLOAD_PATH));
+        if (payload == null) {
+            Log.d(TAG, "Unknown weather payload, ignoring it");
+            return;
+        }
+
+        // Only custom art is sent, the watch has its own copy of the Sunshine art.  It's
+        // decoded by the watch at the size it needs, when it needs it.
+        mDataInterface.onDataChanged(payload, map.getAsset(WEATHER_ICON_PATH));
     }
 
     /**
-     * Sends the Data using the Wereable DataApi
-     * @param highTemp
-     * @param lowTemp
-     * @param weatherIcon
+     * @return the item's data followed by its asset keys and ids, in key order, which is
+     * different whenever its data or assets are.  Day items are small, so this is compared
+     * as it is rather than hashed.
      */
-    public void sendData(String highTemp, String lowTemp, Bitmap weatherIcon) {
-
-        Asset assetIcon = Utility.createAssetFromBitmap(weatherIcon);
-
-        PutDataMapRequest putDataMapReq = PutDataMapRequest.create(DATA_PATH);
-        putDataMapReq.getDataMap().putString(WEATHER_HIGH_PATH, highTemp);
-        putDataMapReq.getDataMap().putString(WEATHER_LOW_PATH, lowTemp);
-        putDataMapReq.getDataMap().putAsset(WEATHER_ICON_PATH,assetIcon);
-
-        PutDataRequest putDataReq = putDataMapReq.asPutDataRequest();
-        Wearable.DataApi.putDataItem(mGoogleApiClient, putDataReq).setResultCallback(new ResultCallback<DataApi.DataItemResult>() {
-            @Override
-            public void onResult(DataApi.DataItemResult dataItemResult) {
-                if (dataItemResult.getStatus().isSuccess()) {
-                    Log.d(TAG,"on Message Sent");
-                }else {
-                    Log.d(TAG,"Error sending message to wereable");
-                }
+    private static byte[] getVersion(DataItem item) {
+        ByteArrayOutputStream version = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(version);
+        try {
+            byte[] data = item.getData();
+            out.writeInt(data != null ? data.length : -1);
+            if (data != null) {
+                out.write(data);
             }
-        });
+            for (Map.Entry<String, DataItemAsset> asset
+                    : new TreeMap<String, DataItemAsset>(item.getAssets()).entrySet()) {
+                out.writeUTF(asset.getKey());
+                out.writeUTF(asset.getValue().getId());
+            }
+        } catch (IOException e) {
+            // Not thrown when writing to memory
+            throw new IllegalStateException(e);
+        }
+        return version.toByteArray();
+    }
+
+    /**
+     * @return the path of the data item for the slot
+     */
+    public static String getDayPath(int slot) {
+        return DAY_PATH_PREFIX + slot;
+    }
+
+    /**
+     * Creates the data item for a day of the forecast, to send through a
+     * {@link WearConnectionManager}
+     * @param slot the slot of the day, see {@link WearForecastPlanner}
+     * @param payload the day's weather
+     * @param weatherIcon art to show instead of the watch's own, or null
+     * @return the data item
+     */
+    public static PutDataRequest createDayRequest(int slot, WeatherPayload payload, Bitmap weatherIcon) {
+
+        PutDataMapRequest putDataMapReq = PutDataMapRequest.create(getDayPath(slot));
+        putDataMapReq.getDataMap().putByteArray(WEATHER_PAYLOAD_PATH, payload.toBytes());
+        if (weatherIcon != null) {
+            putDataMapReq.getDataMap().putAsset(WEATHER_ICON_PATH, Utility.createAssetFromBitmap(weatherIcon));
+        }
+        return putDataMapReq.asPutDataRequest();
     }
 
     @Override
@@ -0,0 +1,67 @@
+package com.example.android.sunshine.common;
+
+import java.util.List;
+
+/**
+ * Works out which days of the forecast have to be sent to the watch.
+ *
+ * Each day goes in its own data item, in one of {@link #SLOTS} slots picked by its Julian day.  As
+ * the forecast window moves on a day, the day that dropped out is overwritten by the one that came
+ * in, so the number of items stays bounded without deleting any, and the days that are still in
+ * the window keep their slot.  A day is only sent again when its values changed.
+ *
+ * This has no Android dependencies, the data layer is behind {@link Transport}.
+ */
+public class WearForecastPlanner {
+
+    /**
+     * How many days the watch can hold.  Days past this many in the forecast aren't sent.
+     */
+    public static final int SLOTS = 16;
+
+    public interface Transport {
+        /**
+         * Sends the day in the given slot, replacing what was there.
+         * @return the number of bytes sent, 0 if it's only queued to be sent
+         */
+        int sendDay(int slot, WeatherPayload day);
+    }
+
+    // What was last sent in each slot
+    private final WeatherPayload[] mSent = new WeatherPayload[SLOTS];
+
+    public static int slotFor(int julianDay) {
+        return ((julianDay % SLOTS) + SLOTS) % SLOTS;
+    }
+
+    /**
+     * Sends the days of the forecast that changed since the last call.
+     * @param forecast the forecast, a day per entry starting with today
+     * @return the number of days sent
+     */
+    public synchronized int send(List<WeatherPayload> forecast, Transport transport) {
+        int sent = 0;
+        int days = Math.min(forecast.size(), SLOTS);
+        for (int i = 0; i < days; i++) {
+            WeatherPayload day = forecast.get(i);
+            int slot = slotFor(day.julianDay);
+            if (day.equals(mSent[slot])) {
+                continue;
+            }
+            transport.sendDay(slot, day);
+            mSent[slot] = day;
+            sent++;
+        }
+        return sent;
+    }
+
+    /**
+     * Forgets what was sent, so the next call sends every day, e.g. because the art sent along
+     * with the days changed.
+     */
+    public synchronized void reset() {
+        for (int i = 0; i < SLOTS; i++) {
+            mSent[i] = null;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.android.sunshine.common;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds what's going to the watch for a short window before sending it, so updates that come in
+ * a burst, e.g. several refreshes in a row, are sent once.
+ *
+ * Items are keyed by path and a newer item replaces one still waiting for the same path, so only
+ * the latest is ever sent.  Items are cheap descriptions of what to send, the actual data (and
+ * any art) is only built by the {@link NodeApi} when they are sent.  When no watch is connected
+ * nothing is sent and the items wait for {@link #onNodeConnected()} or the next post, which
+ * sends them along with its own.
+ *
+ * This has no Android dependencies, the data layer is behind {@link NodeApi} and the timing
+ * behind {@link Scheduler}.
+ */
+public class WearOutbox<T> {
+
+    public interface NodeApi<T> {
+        /**
+         * Called from the scheduler's thread, so it may block.
+         * @return whether a watch is connected
+         */
+        boolean isNodeConnected();
+
+        /**
+         * Sends the item to the watch, from the scheduler's thread.
+         * @return the number of bytes sent
+         */
+        int send(String path, T item);
+
+        /**
+         * Called from the scheduler's thread once everything that was waiting has been sent, e.g.
+         * to remember it was delivered.
+         */
+        void onFlushed();
+    }
+
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    private final NodeApi<T> mNodeApi;
+    private final Scheduler mScheduler;
+    private final long mWindowMillis;
+
+    // Waiting to be sent, by path
+    private final Map<String, T> mPending = new LinkedHashMap<String, T>();
+    private boolean mFlushScheduled;
+
+    // Metrics
+    private int mPostedCount;
+    private int mSupersededCount;
+    private int mSentCount;
+    private int mDeferredFlushCount;
+    private long mSentBytes;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * @param windowMillis how long an item waits for newer ones before it's sent
+     */
+    public WearOutbox(NodeApi<T> nodeApi, Scheduler scheduler, long windowMillis) {
+        mNodeApi = nodeApi;
+        mScheduler = scheduler;
+        mWindowMillis = windowMillis;
+    }
+
+    /**
+     * Sends the item at the end of the window, unless a newer one for the path comes first.
+     */
+    public synchronized void post(String path, T item) {
+        mPostedCount++;
+        if (mPending.put(path, item) != null) {
+            mSupersededCount++;
+        }
+        scheduleFlush(mWindowMillis);
+    }
+
+    /**
+     * Sends the waiting items, for when a watch connects.
+     */
+    public synchronized void onNodeConnected() {
+        if (!mPending.isEmpty()) {
+            scheduleFlush(0);
+        }
+    }
+
+    public synchronized boolean hasPending() {
+        return !mPending.isEmpty();
+    }
+
+    public synchronized int getPostedCount() {
+        return mPostedCount;
+    }
+
+    /**
+     * @return how many items were replaced by a newer one before they were sent
+     */
+    public synchronized int getSupersededCount() {
+        return mSupersededCount;
+    }
+
+    public synchronized int getSentCount() {
+        return mSentCount;
+    }
+
+    /**
+     * @return how many times sending was put off because no watch was connected
+     */
+    public synchronized int getDeferredFlushCount() {
+        return mDeferredFlushCount;
+    }
+
+    public synchronized String getMetrics() {
+        return "posted " + mPostedCount + ", superseded " + mSupersededCount + ", sent "
+                + mSentCount + " (" + mSentBytes + " bytes), deferred " + mDeferredFlushCount
+                + ", pending " + mPending.size();
+    }
+
+    private void scheduleFlush(long delayMillis) {
+        if (mFlushScheduled) {
+            return;
+        }
+        mFlushScheduled = true;
+        mScheduler.schedule(mFlush, delayMillis);
+    }
+
+    private void flush() {
+        Map<String, T> items;
+        synchronized (this) {
+            mFlushScheduled = false;
+            if (mPending.isEmpty()) {
+                return;
+            }
+        }
+
+        // Asked outside the lock, it may block and posts shouldn't wait for it
+        boolean connected = mNodeApi.isNodeConnected();
+        synchronized (this) {
+            if (!connected) {
+                // Everything waits for the watch to come back
+                mDeferredFlushCount++;
+                return;
+            }
+            items = new LinkedHashMap<String, T>(mPending);
+            mPending.clear();
+        }
+
+        for (Map.Entry<String, T> item : items.entrySet()) {
+            int bytes = mNodeApi.send(item.getKey(), item.getValue());
+            synchronized (this) {
+                mSentCount++;
+                mSentBytes += bytes;
+            }
+        }
+        // Items posted meanwhile go with the next flush, which calls back then
+        if (!hasPending()) {
+            mNodeApi.onFlushed();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.android.sunshine.common;
+
+/**
+ * Maps weather condition ids to the art shared by the phone and the watch, so the watch can draw
+ * the art from its own bundled images and only the condition id has to be sent to it.
+ *
+ * The keys are part of the wear payload, so new ones must only be added at the end.
+ */
+public final class WeatherArt {
+
+    public static final int UNKNOWN = -1;
+    public static final int STORM = 0;
+    public static final int LIGHT_RAIN = 1;
+    public static final int RAIN = 2;
+    public static final int SNOW = 3;
+    public static final int FOG = 4;
+    public static final int CLEAR = 5;
+    public static final int LIGHT_CLOUDS = 6;
+    public static final int CLOUDS = 7;
+
+    public static final int COUNT = 8;
+
+    // The name each key has in the art packs and the bundled drawables, art_<name>
+    private static final String[] NAMES = {
+            "storm", "light_rain", "rain", "snow", "fog", "clear", "light_clouds", "clouds"
+    };
+
+    private WeatherArt() {
+    }
+
+    /**
+     * @return the art key for the weather condition, or {@link #UNKNOWN} if there is no art for it.
+     */
+    public static int getArtKey(int weatherId) {
+        // Based on weather code data found at:
+        // http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+        if (weatherId >= 200 && weatherId <= 232) {
+            return STORM;
+        } else if (weatherId >= 300 && weatherId <= 321) {
+            return LIGHT_RAIN;
+        } else if (weatherId >= 500 && weatherId <= 504) {
+            return RAIN;
+        } else if (weatherId == 511) {
+            return SNOW;
+        } else if (weatherId >= 520 && weatherId <= 531) {
+            return RAIN;
+        } else if (weatherId >= 600 && weatherId <= 622) {
+            return SNOW;
+        } else if (weatherId >= 701 && weatherId <= 761) {
+            return FOG;
+        } else if (weatherId == 781) {
+            return STORM;
+        } else if (weatherId == 800) {
+            return CLEAR;
+        } else if (weatherId == 801) {
+            return LIGHT_CLOUDS;
+        } else if (weatherId >= 802 && weatherId <= 804) {
+            return CLOUDS;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * @return the name of the art, e.g. "light_rain", or null for {@link #UNKNOWN}.
+     */
+    public static String getName(int artKey) {
+        return artKey >= 0 && artKey < COUNT ? NAMES[artKey] : null;
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.android.sunshine.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A day of weather as it is sent to the watch: the Julian day it is for, the condition id and the
+ * temperatures as numbers, in Celsius, plus the units the user prefers them in.  The watch formats
+ * the temperatures and picks the art for the condition itself.
+ *
+ * It's encoded in a fixed 16 bytes, starting with a version so the format can change without
+ * the watch misreading an older or newer phone.
+ */
+public final class WeatherPayload {
+
+    public static final int VERSION = 2;
+
+    // version, flags, weather id, julian day, high, low
+    static final int SIZE = 1 + 1 + 2 + 4 + 4 + 4;
+
+    private static final int FLAG_METRIC = 1;
+
+    private static final char DEGREE = '\u00B0';
+
+    public final int julianDay;
+    public final int weatherId;
+    public final float high;
+    public final float low;
+    public final boolean metric;
+
+    public WeatherPayload(int julianDay, int weatherId, double high, double low, boolean metric) {
+        this.julianDay = julianDay;
+        this.weatherId = weatherId;
+        this.high = (float) high;
+        this.low = (float) low;
+        this.metric = metric;
+    }
+
+    public byte[] toBytes() {
+        return ByteBuffer.allocate(SIZE)
+                .put((byte) VERSION)
+                .put((byte) (metric ? FLAG_METRIC : 0))
+                .putShort((short) weatherId)
+                .putInt(julianDay)
+                .putFloat(high)
+                .putFloat(low)
+                .array();
+    }
+
+    /**
+     * @return the payload, or null if the bytes aren't a payload this version can read.
+     */
+    public static WeatherPayload fromBytes(byte[] bytes) {
+        if (bytes == null || bytes.length < SIZE || bytes[0] != VERSION) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, SIZE - 1);
+        boolean metric = (buffer.get() & FLAG_METRIC) != 0;
+        int weatherId = buffer.getShort() & 0xffff;
+        int julianDay = buffer.getInt();
+        float high = buffer.getFloat();
+        float low = buffer.getFloat();
+        return new WeatherPayload(julianDay, weatherId, high, low, metric);
+    }
+
+    public String formatHigh() {
+        return formatTemperature(high);
+    }
+
+    public String formatLow() {
+        return formatTemperature(low);
+    }
+
+    /**
+     * Formats a temperature like the phone does, converted to Fahrenheit if the user prefers it
+     * and rounded half up to whole degrees.  The sign is kept for temperatures that round to
+     * zero, so -0.2 is "-0" on both.
+     */
+    private String formatTemperature(float temperature) {
+        double value = metric ? temperature : (temperature * 1.8) + 32;
+        long rounded = (long) (Math.abs(value) + 0.5);
+        StringBuilder builder = new StringBuilder(5);
+        if (Double.doubleToRawLongBits(value) < 0) {
+            builder.append('-');
+        }
+        return builder.append(rounded).append(DEGREE).toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof WeatherPayload)) return false;
+        WeatherPayload that = (WeatherPayload) o;
+        return julianDay == that.julianDay && weatherId == that.weatherId && metric == that.metric
+                && Float.compare(high, that.high) == 0 && Float.compare(low, that.low) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = julianDay;
+        result = 31 * result + weatherId;
+        result = 31 * result + Float.floatToIntBits(high);
+        result = 31 * result + Float.floatToIntBits(low);
+        result = 31 * result + (metric ? 1 : 0);
+        return result;
+    }
+}
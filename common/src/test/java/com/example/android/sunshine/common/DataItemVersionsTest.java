@@ -0,0 +1,58 @@
+package com.example.android.sunshine.common;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class DataItemVersionsTest {
+
+    static final String TODAY_PATH = "/sunshine_weather/day/3";
+    static final String TOMORROW_PATH = "/sunshine_weather/day/4";
+
+    static final byte[] VERSION = {4, 2};
+    static final byte[] NEXT_VERSION = {4, 3};
+
+    private DataItemVersions mVersions;
+
+    @Before
+    public void setUp() throws Exception {
+        mVersions = new DataItemVersions();
+    }
+
+    @Test
+    public void fetchedItemIsNotDeliveredAgainByItsChangeEvent() throws Exception {
+        assertTrue(mVersions.markDelivered(TODAY_PATH, VERSION));
+        assertFalse(mVersions.markDelivered(TODAY_PATH, VERSION.clone()));
+        assertEquals(1, mVersions.getDuplicates());
+    }
+
+    @Test
+    public void newVersionIsDelivered() throws Exception {
+        mVersions.markDelivered(TODAY_PATH, VERSION);
+        assertTrue(mVersions.markDelivered(TODAY_PATH, NEXT_VERSION));
+        // Going back to an older version is a change too
+        assertTrue(mVersions.markDelivered(TODAY_PATH, VERSION));
+        assertEquals(0, mVersions.getDuplicates());
+    }
+
+    @Test
+    public void versionsWithTheSameHashAreDifferent() throws Exception {
+        byte[] version = {0, 31};
+        byte[] collidingVersion = {1, 0};
+        assertEquals(Arrays.hashCode(version), Arrays.hashCode(collidingVersion));
+
+        mVersions.markDelivered(TODAY_PATH, version);
+        assertTrue(mVersions.markDelivered(TODAY_PATH, collidingVersion));
+    }
+
+    @Test
+    public void pathsAreTrackedSeparately() throws Exception {
+        mVersions.markDelivered(TODAY_PATH, VERSION);
+        assertTrue(mVersions.markDelivered(TOMORROW_PATH, VERSION));
+        assertFalse(mVersions.markDelivered(TOMORROW_PATH, VERSION));
+        assertFalse(mVersions.markDelivered(TODAY_PATH, VERSION));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.android.sunshine.common;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WearForecastPlannerTest {
+
+    static final int TODAY = 2457432;
+    static final int WINDOW = 14;
+
+    /**
+     * Stands in for the data layer, keeping the payload bytes of each slot like the watch gets
+     * them.
+     */
+    static class FakeTransport implements WearForecastPlanner.Transport {
+        final Map<Integer, byte[]> items = new HashMap<Integer, byte[]>();
+        int sends;
+
+        @Override
+        public int sendDay(int slot, WeatherPayload day) {
+            byte[] bytes = day.toBytes();
+            items.put(slot, bytes);
+            sends++;
+            return bytes.length;
+        }
+
+        WeatherPayload dayOnWatch(int julianDay) {
+            byte[] bytes = items.get(WearForecastPlanner.slotFor(julianDay));
+            WeatherPayload day = bytes == null ? null : WeatherPayload.fromBytes(bytes);
+            return day != null && day.julianDay == julianDay ? day : null;
+        }
+    }
+
+    private WearForecastPlanner mPlanner;
+    private FakeTransport mTransport;
+
+    @Before
+    public void setUp() throws Exception {
+        mPlanner = new WearForecastPlanner();
+        mTransport = new FakeTransport();
+    }
+
+    private static List<WeatherPayload> forecast(int firstDay, int days) {
+        List<WeatherPayload> forecast = new ArrayList<WeatherPayload>();
+        for (int day = firstDay; day < firstDay + days; day++) {
+            forecast.add(new WeatherPayload(day, 800 + day % 5, day % 30, day % 10, true));
+        }
+        return forecast;
+    }
+
+    @Test
+    public void firstSendSendsEveryDay() throws Exception {
+        assertEquals(WINDOW, mPlanner.send(forecast(TODAY, WINDOW), mTransport));
+        for (int day = TODAY; day < TODAY + WINDOW; day++) {
+            assertNotNull(mTransport.dayOnWatch(day));
+        }
+    }
+
+    @Test
+    public void unchangedForecastSendsNothing() throws Exception {
+        mPlanner.send(forecast(TODAY, WINDOW), mTransport);
+        mTransport.sends = 0;
+        assertEquals(0, mPlanner.send(forecast(TODAY, WINDOW), mTransport));
+        assertEquals(0, mTransport.sends);
+    }
+
+    @Test
+    public void onlyChangedDaysAreSent() throws Exception {
+        mPlanner.send(forecast(TODAY, WINDOW), mTransport);
+
+        List<WeatherPayload> changed = forecast(TODAY, WINDOW);
+        changed.set(3, new WeatherPayload(TODAY + 3, 500, 12, 8, true));
+        assertEquals(1, mPlanner.send(changed, mTransport));
+        assertEquals(500, mTransport.dayOnWatch(TODAY + 3).weatherId);
+
+        // The units are part of every day
+        List<WeatherPayload> imperial = new ArrayList<WeatherPayload>();
+        for (WeatherPayload day : changed) {
+            imperial.add(new WeatherPayload(day.julianDay, day.weatherId, day.high, day.low, false));
+        }
+        assertEquals(WINDOW, mPlanner.send(imperial, mTransport));
+    }
+
+    @Test
+    public void movingWindowOnlySendsTheNewDay() throws Exception {
+        mPlanner.send(forecast(TODAY, WINDOW), mTransport);
+        assertEquals(1, mPlanner.send(forecast(TODAY + 1, WINDOW), mTransport));
+
+        // Tomorrow was already on the watch, so it has today's weather after midnight
+        assertNotNull(mTransport.dayOnWatch(TODAY + 1));
+        assertNotNull(mTransport.dayOnWatch(TODAY + WINDOW));
+
+        // Moving on past the number of slots reuses them without mixing up days
+        for (int day = TODAY + 2; day < TODAY + 2 * WearForecastPlanner.SLOTS; day++) {
+            mPlanner.send(forecast(day, WINDOW), mTransport);
+        }
+        int last = TODAY + 2 * WearForecastPlanner.SLOTS - 1;
+        assertNull(mTransport.dayOnWatch(TODAY));
+        assertEquals(last, mTransport.dayOnWatch(last).julianDay);
+        assertTrue(mTransport.items.size() <= WearForecastPlanner.SLOTS);
+    }
+
+    @Test
+    public void resetSendsEverythingAgain() throws Exception {
+        mPlanner.send(forecast(TODAY, WINDOW), mTransport);
+        mPlanner.reset();
+        assertEquals(WINDOW, mPlanner.send(forecast(TODAY, WINDOW), mTransport));
+    }
+
+    @Test
+    public void forecastLongerThanTheSlotsIsCut() throws Exception {
+        int days = WearForecastPlanner.SLOTS + 4;
+        assertEquals(WearForecastPlanner.SLOTS, mPlanner.send(forecast(TODAY, days), mTransport));
+        assertNotNull(mTransport.dayOnWatch(TODAY));
+    }
+}
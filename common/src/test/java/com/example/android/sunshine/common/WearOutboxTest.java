@@ -0,0 +1,172 @@
+package com.example.android.sunshine.common;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class WearOutboxTest {
+
+    static final long WINDOW_MILLIS = 5000;
+    static final String TODAY_PATH = "/sunshine_weather/day/3";
+    static final String TOMORROW_PATH = "/sunshine_weather/day/4";
+
+    /**
+     * Stands in for the watch, keeping what was sent to each path.
+     */
+    static class FakeNodeApi implements WearOutbox.NodeApi<String> {
+        boolean connected = true;
+        final Map<String, String> items = new LinkedHashMap<String, String>();
+        int sends;
+        int flushes;
+
+        @Override
+        public boolean isNodeConnected() {
+            return connected;
+        }
+
+        @Override
+        public int send(String path, String item) {
+            items.put(path, item);
+            sends++;
+            return item.length();
+        }
+
+        @Override
+        public void onFlushed() {
+            flushes++;
+        }
+    }
+
+    /**
+     * Runs the scheduled tasks when told to, the delays only matter in that nothing runs early.
+     */
+    static class FakeScheduler implements WearOutbox.Scheduler {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+        final List<Long> delays = new ArrayList<Long>();
+
+        @Override
+        public void schedule(Runnable task, long delayMillis) {
+            tasks.add(task);
+            delays.add(delayMillis);
+        }
+
+        void runAll() {
+            List<Runnable> due = new ArrayList<Runnable>(tasks);
+            tasks.clear();
+            for (Runnable task : due) {
+                task.run();
+            }
+        }
+    }
+
+    private FakeNodeApi mNodeApi;
+    private FakeScheduler mScheduler;
+    private WearOutbox<String> mOutbox;
+
+    @Before
+    public void setUp() throws Exception {
+        mNodeApi = new FakeNodeApi();
+        mScheduler = new FakeScheduler();
+        mOutbox = new WearOutbox<String>(mNodeApi, mScheduler, WINDOW_MILLIS);
+    }
+
+    @Test
+    public void nothingIsSentBeforeTheWindowEnds() throws Exception {
+        mOutbox.post(TODAY_PATH, "25/16");
+        assertEquals(0, mNodeApi.sends);
+        assertEquals(1, mScheduler.tasks.size());
+        assertEquals(WINDOW_MILLIS, (long) mScheduler.delays.get(0));
+
+        mScheduler.runAll();
+        assertEquals("25/16", mNodeApi.items.get(TODAY_PATH));
+        assertFalse(mOutbox.hasPending());
+    }
+
+    @Test
+    public void burstIsCoalescedToTheLatestOfEachPath() throws Exception {
+        // Three refreshes in a row
+        mOutbox.post(TODAY_PATH, "25/16");
+        mOutbox.post(TOMORROW_PATH, "22/14");
+        mOutbox.post(TODAY_PATH, "26/16");
+        mOutbox.post(TODAY_PATH, "27/17");
+        assertEquals("Error: a burst should only schedule one send", 1, mScheduler.tasks.size());
+
+        mScheduler.runAll();
+        assertEquals(2, mNodeApi.sends);
+        assertEquals("27/17", mNodeApi.items.get(TODAY_PATH));
+        assertEquals("22/14", mNodeApi.items.get(TOMORROW_PATH));
+        assertEquals(4, mOutbox.getPostedCount());
+        assertEquals(2, mOutbox.getSupersededCount());
+        assertEquals(2, mOutbox.getSentCount());
+    }
+
+    @Test
+    public void flushIsReportedOnceEverythingIsSent() throws Exception {
+        mOutbox.post(TODAY_PATH, "25/16");
+        mOutbox.post(TOMORROW_PATH, "27/18");
+        assertEquals(0, mNodeApi.flushes);
+        mScheduler.runAll();
+        assertEquals(1, mNodeApi.flushes);
+    }
+
+    @Test
+    public void nothingIsSentWhileTheWatchIsAway() throws Exception {
+        mNodeApi.connected = false;
+        mOutbox.post(TODAY_PATH, "25/16");
+        mScheduler.runAll();
+        assertEquals(0, mNodeApi.sends);
+        assertEquals("Error: nothing was delivered", 0, mNodeApi.flushes);
+        assertEquals(1, mOutbox.getDeferredFlushCount());
+        assertTrue(mOutbox.hasPending());
+
+        // Still coalesced while waiting
+        mOutbox.post(TODAY_PATH, "26/16");
+        mScheduler.runAll();
+        assertEquals(0, mNodeApi.sends);
+        assertEquals(2, mOutbox.getDeferredFlushCount());
+    }
+
+    @Test
+    public void reconnectingWatchGetsTheLatest() throws Exception {
+        mNodeApi.connected = false;
+        mOutbox.post(TODAY_PATH, "25/16");
+        mOutbox.post(TODAY_PATH, "26/16");
+        mScheduler.runAll();
+
+        mNodeApi.connected = true;
+        mOutbox.onNodeConnected();
+        assertEquals("Error: a reconnect should send right away",
+                0L, (long) mScheduler.delays.get(mScheduler.delays.size() - 1));
+        mScheduler.runAll();
+        assertEquals(1, mNodeApi.sends);
+        assertEquals("26/16", mNodeApi.items.get(TODAY_PATH));
+        assertFalse(mOutbox.hasPending());
+    }
+
+    @Test
+    public void waitingItemsGoWithTheNextPost() throws Exception {
+        // No reconnect was heard, e.g. the connection went idle while the watch was away
+        mNodeApi.connected = false;
+        mOutbox.post(TODAY_PATH, "25/16");
+        mScheduler.runAll();
+
+        mNodeApi.connected = true;
+        mOutbox.post(TOMORROW_PATH, "27/18");
+        mScheduler.runAll();
+        assertEquals(2, mNodeApi.sends);
+        assertEquals("25/16", mNodeApi.items.get(TODAY_PATH));
+        assertFalse(mOutbox.hasPending());
+    }
+
+    @Test
+    public void reconnectWithNothingPendingSendsNothing() throws Exception {
+        mOutbox.onNodeConnected();
+        assertTrue(mScheduler.tasks.isEmpty());
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.android.sunshine.common;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WeatherPayloadTest {
+
+    static final int DAY = 2457432;
+
+    @Test
+    public void roundTrip() throws Exception {
+        WeatherPayload payload = new WeatherPayload(DAY, 801, 21.4, -3.5, true);
+        byte[] bytes = payload.toBytes();
+        assertEquals(WeatherPayload.SIZE, bytes.length);
+        assertEquals(payload, WeatherPayload.fromBytes(bytes));
+        assertEquals(DAY, WeatherPayload.fromBytes(bytes).julianDay);
+
+        WeatherPayload imperial = new WeatherPayload(DAY, 511, 0, 0, false);
+        assertEquals(imperial, WeatherPayload.fromBytes(imperial.toBytes()));
+    }
+
+    @Test
+    public void unknownVersionIsIgnored() throws Exception {
+        byte[] bytes = new WeatherPayload(DAY, 800, 20, 10, true).toBytes();
+        bytes[0] = WeatherPayload.VERSION + 1;
+        assertNull(WeatherPayload.fromBytes(bytes));
+        assertNull(WeatherPayload.fromBytes(new byte[3]));
+        assertNull(WeatherPayload.fromBytes(null));
+    }
+
+    @Test
+    public void temperaturesAreFormattedLikeThePhone() throws Exception {
+        WeatherPayload metric = new WeatherPayload(DAY, 800, 21.5, -3.5, true);
+        assertEquals("22\u00B0", metric.formatHigh());
+        assertEquals("-4\u00B0", metric.formatLow());
+
+        WeatherPayload imperial = new WeatherPayload(DAY, 800, 20, -0.1, false);
+        assertEquals("68\u00B0", imperial.formatHigh());
+        assertEquals("32\u00B0", imperial.formatLow());
+
+        assertEquals("-0\u00B0", new WeatherPayload(DAY, 800, -0.2, 0, true).formatHigh());
+    }
+
+    @Test
+    public void everyConditionHasArt() throws Exception {
+        assertEquals(WeatherArt.STORM, WeatherArt.getArtKey(200));
+        assertEquals(WeatherArt.FOG, WeatherArt.getArtKey(761));
+        assertEquals(WeatherArt.STORM, WeatherArt.getArtKey(781));
+        assertEquals(WeatherArt.CLEAR, WeatherArt.getArtKey(800));
+        assertEquals(WeatherArt.UNKNOWN, WeatherArt.getArtKey(100));
+        assertEquals("light_clouds", WeatherArt.getName(WeatherArt.getArtKey(801)));
+        assertNull(WeatherArt.getName(WeatherArt.UNKNOWN));
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.text.format.Time;
+import android.util.Log;
+
+public class TestWatchFaceRenderer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWatchFaceRenderer.class.getSimpleName();
+
+    static final int FRAMES = 1000;
+    static final int FACE_SIZE = 320;
+    static final int ICON_SIZE = 50;
+
+    @SuppressWarnings("deprecation")
+    public void testDrawDoesNotAllocate() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(mContext.getResources());
+        renderer.setRound(mContext.getResources(), true);
+        renderer.setWeather("25°", "16°",
+                Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888));
+
+        Bitmap face = Bitmap.createBitmap(FACE_SIZE, FACE_SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(face);
+        Rect bounds = new Rect(0, 0, FACE_SIZE, FACE_SIZE);
+
+        Time time = new Time();
+        time.setToNow();
+        long now = time.toMillis(false);
+        int julianDay = Time.getJulianDay(now, time.gmtoff);
+
+        // The first frame of the day formats the date
+        renderer.draw(canvas, bounds, now, julianDay, 0, 0, true, true);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < FRAMES; i++) {
+            // A frame a second, with every hour and minute showing up
+            renderer.draw(canvas, bounds, now + i * 1000, julianDay, (i / 60) % 24, i % 60,
+                    i % 2 == 0, true);
+        }
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        Log.d(LOG_TAG, "Allocations over " + FRAMES + " frames: " + allocations);
+        assertEquals("Error: drawing the watch face shouldn't allocate", 0, allocations);
+    }
+
+    public void testLayerIsOnlyDrawnWhenItChanges() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(mContext.getResources());
+        renderer.setRound(mContext.getResources(), false);
+
+        Canvas canvas = new Canvas(Bitmap.createBitmap(FACE_SIZE, FACE_SIZE, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, FACE_SIZE, FACE_SIZE);
+        long now = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(now, 0);
+
+        for (int i = 0; i < FRAMES; i++) {
+            renderer.draw(canvas, bounds, now + i * 1000, julianDay, (i / 60) % 24, i % 60, true,
+                    true);
+        }
+        Log.d(LOG_TAG, renderer.getFrameStats());
+        assertEquals("Error: the time changing shouldn't draw the layer again",
+                1, renderer.getLayerDrawCount());
+
+        renderer.setWeather("25°", "16°",
+                Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888));
+        renderer.draw(canvas, bounds, now, julianDay, 0, 0, true, true);
+        renderer.draw(canvas, bounds, now, julianDay + 1, 0, 0, true, true);
+        renderer.draw(canvas, bounds, now, julianDay + 1, 0, 0, true, false);
+        renderer.draw(canvas, bounds, now, julianDay + 1, 0, 0, true, false);
+        assertEquals("Error: the weather, date and peek card should each draw the layer again",
+                4, renderer.getLayerDrawCount());
+        assertEquals(FRAMES + 4, renderer.getFrameCount());
+    }
+
+    @SuppressWarnings("deprecation")
+    public void testAmbientDrawDoesNotAllocate() {
+        AmbientRenderer renderer = new AmbientRenderer(mContext.getResources());
+        renderer.setRound(mContext.getResources(), true);
+        renderer.setAmbientProperties(true, true);
+        renderer.setWeather("25°", "16°");
+
+        Canvas canvas = new Canvas(Bitmap.createBitmap(FACE_SIZE, FACE_SIZE, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, FACE_SIZE, FACE_SIZE);
+        long now = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(now, 0);
+
+        // The first frame renders the glyphs and the layer
+        renderer.draw(canvas, bounds, now, julianDay, 0, 0, true);
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for (int i = 0; i < FRAMES; i++) {
+            // A frame a minute
+            renderer.draw(canvas, bounds, now + i * 60000, julianDay, (i / 60) % 24, i % 60, true);
+        }
+        Debug.stopAllocCounting();
+        int allocations = Debug.getThreadAllocCount();
+
+        Log.d(LOG_TAG, "Ambient allocations over " + FRAMES + " frames: " + allocations);
+        assertEquals("Error: drawing the ambient face shouldn't allocate", 0, allocations);
+    }
+
+    /**
+     * Draws the same times in both modes and logs how long the frames take, for comparing them.
+     */
+    public void testAmbientAndInteractiveDrawTimes() {
+        WatchFaceRenderer renderer = new WatchFaceRenderer(mContext.getResources());
+        renderer.setRound(mContext.getResources(), true);
+        renderer.setWeather("25°", "16°",
+                Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888));
+        AmbientRenderer ambientRenderer = new AmbientRenderer(mContext.getResources());
+        ambientRenderer.setRound(mContext.getResources(), true);
+        ambientRenderer.setAmbientProperties(true, false);
+        ambientRenderer.setWeather("25°", "16°");
+
+        Canvas canvas = new Canvas(Bitmap.createBitmap(FACE_SIZE, FACE_SIZE, Bitmap.Config.ARGB_8888));
+        Rect bounds = new Rect(0, 0, FACE_SIZE, FACE_SIZE);
+        long now = System.currentTimeMillis();
+        int julianDay = Time.getJulianDay(now, 0);
+
+        // Warms up both, so rendering the layers and glyphs isn't counted
+        renderer.draw(canvas, bounds, now, julianDay, 0, 0, true, true);
+        ambientRenderer.draw(canvas, bounds, now, julianDay, 0, 0, true);
+        renderer.resetFrameStats();
+        ambientRenderer.resetFrameStats();
+
+        for (int i = 0; i < FRAMES; i++) {
+            int hour = (i / 60) % 24;
+            int minute = i % 60;
+            renderer.draw(canvas, bounds, now, julianDay, hour, minute, true, true);
+            ambientRenderer.draw(canvas, bounds, now, julianDay, hour, minute, true);
+        }
+
+        Log.d(LOG_TAG, "Interactive: " + renderer.getFrameStats());
+        Log.d(LOG_TAG, "Ambient: " + ambientRenderer.getFrameStats());
+        assertEquals(FRAMES, renderer.getFrameCount());
+        assertEquals(FRAMES, ambientRenderer.getFrameCount());
+        assertEquals("Error: the time changing shouldn't draw the interactive layer again",
+                0, renderer.getLayerDrawCount());
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.common.WearForecastPlanner;
+import com.example.android.sunshine.common.WeatherPayload;
+
+import java.io.File;
+
+public class TestWeatherCache extends AndroidTestCase {
+
+    static final int ICON_SIZE = 50;
+    static final int TEST_JULIAN_DAY = 2457430;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        new File(mContext.getFilesDir(), "weather_cache").delete();
+    }
+
+    public void testSnapshotSurvivesARestart() throws Exception {
+        WeatherCache cache = new WeatherCache(mContext);
+        assertNull("Error: nothing should be cached yet", cache.load());
+
+        WeatherCache.Snapshot snapshot = new WeatherCache.Snapshot();
+        WeatherPayload today = new WeatherPayload(TEST_JULIAN_DAY, 800, 25.4, 16.2, true);
+        int slot = WearForecastPlanner.slotFor(TEST_JULIAN_DAY);
+        snapshot.days[slot] = today;
+        snapshot.artDigests[slot] = "digest";
+        snapshot.iconKey = "asset:digest";
+        snapshot.icon = Bitmap.createBitmap(ICON_SIZE, ICON_SIZE, Bitmap.Config.ARGB_8888);
+        snapshot.icon.eraseColor(Color.RED);
+        cache.save(snapshot);
+
+        // A new cache, like the next time the face is created.  The save is in the background.
+        WeatherCache.Snapshot loaded = null;
+        for (int i = 0; i < 20 && loaded == null; i++) {
+            Thread.sleep(50);
+            loaded = new WeatherCache(mContext).load();
+        }
+        assertNotNull("Error: the snapshot wasn't saved", loaded);
+
+        for (int i = 0; i < WearForecastPlanner.SLOTS; i++) {
+            assertEquals("Error: slot " + i + " wasn't loaded as saved",
+                    snapshot.days[i], loaded.days[i]);
+            assertEquals("Error: the art of slot " + i + " wasn't loaded as saved",
+                    snapshot.artDigests[i], loaded.artDigests[i]);
+        }
+        assertEquals("asset:digest", loaded.iconKey);
+        assertNotNull("Error: the icon wasn't loaded", loaded.icon);
+        assertEquals("Error: the icon shouldn't be scaled again", ICON_SIZE, loaded.icon.getWidth());
+        assertEquals(Color.RED, loaded.icon.getPixel(ICON_SIZE / 2, ICON_SIZE / 2));
+    }
+}
@@ -0,0 +1,348 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the watch face in ambient mode, where it's drawn once a minute on a time tick.
+ *
+ * Everything is white on black.  The digits and colon are rendered once into a glyph strip and a
+ * time is drawn by copying glyphs out of it, with no text layout.  The date and a text only
+ * summary of the weather are drawn into a cached layer.  Both are alpha only bitmaps, drawn
+ * again only when the screen shape, the ambient properties or their content change.
+ *
+ * On low-bit screens the glyphs and layer are drawn without anti-aliasing, so they are pure black
+ * and white.  With burn-in protection the digits are outlined and the whole face is shifted by a
+ * few pixels every minute, so no pixel stays lit.
+ */
+class AmbientRenderer {
+
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    // The glyphs in the strip, in order
+    private static final String GLYPHS = "0123456789:";
+    private static final int COLON = 10;
+
+    private final Paint mTimePaint;
+    private final Paint mDatePaint;
+    private final Paint mWeatherPaint;
+    // Draws the alpha bitmaps in white
+    private final Paint mBitmapPaint;
+
+    private boolean mBurnInProtection;
+    private final int mBurnInShift;
+
+    // The glyph strip, with where each glyph is in it
+    private Bitmap mGlyphs;
+    private final int[] mGlyphLeft = new int[GLYPHS.length()];
+    private final int[] mGlyphWidth = new int[GLYPHS.length()];
+    private int mGlyphAscent;
+    private boolean mGlyphsDirty = true;
+    private final Rect mGlyphSrc = new Rect();
+    private final Rect mGlyphDst = new Rect();
+
+    // Calendar related objects
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final Date mDate = new Date();
+    private final DateFormat mDateFormat;
+    private String mDateText = "";
+    // The Julian day the date text is for, or -1 to format it again on the next draw
+    private int mDateJulianDay = -1;
+
+    private String mWeatherText = "";
+
+    // Drawing Offset variables
+    private float mYOffset;
+    private float mLineHeight;
+    private float mYOffsetWeather;
+
+    // The date and weather, drawn again when mLayerDirty is set or what it was drawn for changes
+    private Bitmap mLayer;
+    private Canvas mLayerCanvas;
+    private boolean mLayerDirty = true;
+    private boolean mLayerShowWeather;
+
+    // Frame stats
+    private int mFrameCount;
+    private long mTotalFrameNanos;
+    private long mMaxFrameNanos;
+
+    AmbientRenderer(Resources resources) {
+        mTimePaint = createTextPaint();
+        mDatePaint = createTextPaint();
+        mWeatherPaint = createTextPaint();
+
+        mBitmapPaint = new Paint();
+        mBitmapPaint.setColor(Color.WHITE);
+
+        mDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", Locale.getDefault());
+        mDateFormat.setCalendar(mCalendar);
+
+        mBurnInShift = (int) resources.getDimension(R.dimen.ambient_burn_in_shift);
+    }
+
+    private static Paint createTextPaint() {
+        Paint paint = new Paint();
+        paint.setColor(Color.WHITE);
+        paint.setTypeface(NORMAL_TYPEFACE);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Loads the sizes that have alternate values for round watches.
+     */
+    void setRound(Resources resources, boolean isRound) {
+        mTimePaint.setTextSize(resources.getDimension(isRound
+                ? R.dimen.digital_text_size_round : R.dimen.digital_text_size));
+
+        mDatePaint.setTextSize(resources.getDimension(isRound
+                ? R.dimen.digital_date_text_size_round : R.dimen.digital_date_text_size));
+
+        mWeatherPaint.setTextSize(resources.getDimension(isRound
+                ? R.dimen.digital_date_text_size_round : R.dimen.digital_date_text_size));
+
+        mYOffset = resources.getDimension(isRound
+                ? R.dimen.digital_y_offset_round : R.dimen.digital_y_offset);
+
+        mLineHeight = resources.getDimension(isRound
+                ? R.dimen.digital_line_height_round : R.dimen.digital_line_height);
+
+        mYOffsetWeather = resources.getDimension(isRound
+                ? R.dimen.weather_icon_y_offset_round : R.dimen.weather_icon_y_offset);
+
+        mGlyphsDirty = true;
+        mLayerDirty = true;
+    }
+
+    /**
+     * @param lowBit whether the screen has fewer bits for each color in ambient mode
+     * @param burnInProtection whether the screen needs protecting from burn-in
+     */
+    void setAmbientProperties(boolean lowBit, boolean burnInProtection) {
+        mBurnInProtection = burnInProtection;
+
+        mTimePaint.setAntiAlias(!lowBit);
+        mDatePaint.setAntiAlias(!lowBit);
+        mWeatherPaint.setAntiAlias(!lowBit);
+        // Outlines light up far fewer pixels than solid digits
+        mTimePaint.setStyle(burnInProtection ? Paint.Style.STROKE : Paint.Style.FILL);
+
+        mGlyphsDirty = true;
+        mLayerDirty = true;
+    }
+
+    /**
+     * Formats the date again on the next draw, e.g. because the time zone changed.
+     */
+    void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        mDateJulianDay = -1;
+    }
+
+    /**
+     * Sets the weather summary, empty temperatures to show no weather.
+     */
+    void setWeather(String highTemperature, String lowTemperature) {
+        mWeatherText = highTemperature.isEmpty() && lowTemperature.isEmpty()
+                ? "" : highTemperature + " / " + lowTemperature;
+        mLayerDirty = true;
+    }
+
+    /**
+     * Frees the glyphs and the layer, they're drawn again on the next draw.
+     */
+    void release() {
+        if (mGlyphs != null) {
+            mGlyphs.recycle();
+            mGlyphs = null;
+        }
+        if (mLayer != null) {
+            mLayer.recycle();
+            mLayer = null;
+            mLayerCanvas = null;
+        }
+        mGlyphsDirty = true;
+    }
+
+    /**
+     * @param now the current time, in milliseconds
+     * @param julianDay the current day, the date is only formatted when it changes
+     * @param showWeather whether there is room for the weather, e.g. no peek card is showing
+     */
+    void draw(Canvas canvas, Rect bounds, long now, int julianDay, int hour, int minute,
+              boolean showWeather) {
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+
+        // Gets the Current Date Text
+        if (julianDay != mDateJulianDay) {
+            mDateJulianDay = julianDay;
+            mDate.setTime(now);
+            mDateText = mDateFormat.format(mDate).toUpperCase(Locale.US);
+            mLayerDirty = true;
+        }
+
+        if (mGlyphsDirty) {
+            mGlyphsDirty = false;
+            drawGlyphs();
+        }
+
+        int width = bounds.width();
+        int height = bounds.height();
+        if (mLayer == null || mLayer.getWidth() != width || mLayer.getHeight() != height) {
+            if (mLayer != null) {
+                mLayer.recycle();
+            }
+            mLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+            mLayerCanvas = new Canvas(mLayer);
+            mLayerDirty = true;
+        }
+        if (mLayerDirty || showWeather != mLayerShowWeather) {
+            mLayerDirty = false;
+            mLayerShowWeather = showWeather;
+            drawLayer(mLayerCanvas, width, height, showWeather);
+        }
+
+        // Moves the whole face around a 3x3 pixel grid, a step every minute
+        int shiftX = 0;
+        int shiftY = 0;
+        if (mBurnInProtection) {
+            shiftX = (minute % 3 - 1) * mBurnInShift;
+            shiftY = (minute / 3 % 3 - 1) * mBurnInShift;
+        }
+
+        canvas.drawColor(Color.BLACK);
+        canvas.drawBitmap(mLayer, bounds.left + shiftX, bounds.top + shiftY, mBitmapPaint);
+
+        // Gets the total Width of the time so we can center it on the screen
+        int timeWidth = mGlyphWidth[COLON] + mGlyphWidth[minute / 10] + mGlyphWidth[minute % 10];
+        if (hour >= 10) {
+            timeWidth += mGlyphWidth[hour / 10];
+        }
+        timeWidth += mGlyphWidth[hour % 10];
+
+        int x = bounds.centerX() - timeWidth / 2 + shiftX;
+        int top = (int) (bounds.top + mYOffset) - mGlyphAscent + shiftY;
+        if (hour >= 10) {
+            x = drawGlyph(canvas, hour / 10, x, top);
+        }
+        x = drawGlyph(canvas, hour % 10, x, top);
+        x = drawGlyph(canvas, COLON, x, top);
+        x = drawGlyph(canvas, minute / 10, x, top);
+        drawGlyph(canvas, minute % 10, x, top);
+
+        long frameNanos = SystemClock.elapsedRealtimeNanos() - startNanos;
+        mFrameCount++;
+        mTotalFrameNanos += frameNanos;
+        mMaxFrameNanos = Math.max(mMaxFrameNanos, frameNanos);
+    }
+
+    /**
+     * @return the x position after the glyph
+     */
+    private int drawGlyph(Canvas canvas, int glyph, int x, int top) {
+        int left = mGlyphLeft[glyph];
+        int glyphWidth = mGlyphWidth[glyph];
+        mGlyphSrc.set(left, 0, left + glyphWidth, mGlyphs.getHeight());
+        mGlyphDst.set(x, top, x + glyphWidth, top + mGlyphs.getHeight());
+        canvas.drawBitmap(mGlyphs, mGlyphSrc, mGlyphDst, mBitmapPaint);
+        return x + glyphWidth;
+    }
+
+    /**
+     * Renders the glyph strip at the current text size and ambient properties.
+     */
+    private void drawGlyphs() {
+        Paint.FontMetricsInt metrics = mTimePaint.getFontMetricsInt();
+        mGlyphAscent = -metrics.ascent;
+        int height = metrics.descent - metrics.ascent;
+
+        int stripWidth = 0;
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            mGlyphLeft[i] = stripWidth;
+            mGlyphWidth[i] = (int) Math.ceil(mTimePaint.measureText(GLYPHS, i, i + 1));
+            stripWidth += mGlyphWidth[i];
+        }
+
+        if (mGlyphs != null) {
+            mGlyphs.recycle();
+        }
+        mGlyphs = Bitmap.createBitmap(stripWidth, height, Bitmap.Config.ALPHA_8);
+        Canvas glyphCanvas = new Canvas(mGlyphs);
+        for (int i = 0; i < GLYPHS.length(); i++) {
+            glyphCanvas.drawText(GLYPHS, i, i + 1, mGlyphLeft[i], mGlyphAscent, mTimePaint);
+        }
+    }
+
+    /**
+     * Draws the date and weather, in a width by height area at the origin.
+     */
+    private void drawLayer(Canvas canvas, int width, int height, boolean showWeather) {
+        float centerX = width / 2f;
+        float centerY = height / 2f;
+
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+
+        // Draws the current date, centered
+        float datePosX = centerX - mDatePaint.measureText(mDateText) / 2;
+        canvas.drawText(mDateText, datePosX, mYOffset + mLineHeight, mDatePaint);
+
+        // Only render the weather if there is no peek card, so they do not bleed into each other
+        if (!showWeather || mWeatherText.isEmpty()) {
+            return;
+        }
+        float weatherPosX = centerX - mWeatherPaint.measureText(mWeatherText) / 2;
+        canvas.drawText(mWeatherText, weatherPosX, centerY + mYOffsetWeather + mLineHeight,
+                mWeatherPaint);
+    }
+
+    int getFrameCount() {
+        return mFrameCount;
+    }
+
+    long getAverageFrameMicros() {
+        return mFrameCount == 0 ? 0 : mTotalFrameNanos / mFrameCount / 1000;
+    }
+
+    String getFrameStats() {
+        return mFrameCount + " ambient frames, average " + getAverageFrameMicros() + "us, max "
+                + mMaxFrameNanos / 1000 + "us";
+    }
+
+    void resetFrameStats() {
+        mFrameCount = 0;
+        mTotalFrameNanos = 0;
+        mMaxFrameNanos = 0;
+    }
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.format.Time;
+import android.util.Log;
+
+import com.example.android.sunshine.common.WearConnector;
+import com.example.android.sunshine.common.WearForecastPlanner;
+import com.example.android.sunshine.common.WeatherArt;
+import com.example.android.sunshine.common.WeatherPayload;
+import com.google.android.gms.wearable.Asset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One place on the watch to get the forecast from, for the watch face and anything else that
+ * shows the weather.
+ *
+ * It holds the one connection to the phone, the forecast the phone sent and the decoded icons,
+ * so those are paid for once however many components show the weather.  It connects while it has
+ * listeners.  The forecast is kept in a {@link WeatherCache} across restarts, so it's there as
+ * soon as this is created.
+ *
+ * Everything here is called, and calls back, on the main thread.
+ */
+class ForecastRepository implements WearConnector.ConnectionInterface,
+        WearConnector.SunshineDataInterface {
+
+    private static final String TAG = ForecastRepository.class.getSimpleName();
+
+    // Saving is delayed so a burst of changes, e.g. the whole forecast, is saved once
+    private static final long SAVE_CACHE_DELAY_MS = TimeUnit.SECONDS.toMillis(2);
+
+    /**
+     * Bundled art for each {@link WeatherArt} key, used unless the phone sends its own.
+     */
+    private static final int[] ART_RESOURCES = {
+            R.drawable.art_storm,
+            R.drawable.art_light_rain,
+            R.drawable.art_rain,
+            R.drawable.art_snow,
+            R.drawable.art_fog,
+            R.drawable.art_clear,
+            R.drawable.art_light_clouds,
+            R.drawable.art_clouds
+    };
+
+    interface Listener {
+        /**
+         * Called when a day of the forecast changed.
+         */
+        void onForecastChanged();
+    }
+
+    private static ForecastRepository sInstance;
+
+    private final WearConnector mWearConnector;
+    private final IconDecoder mIconDecoder;
+    private final WeatherCache mWeatherCache;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    // The forecast from the phone, in the slots it was sent in, with the art it was sent with if
+    // any
+    private final WeatherPayload[] mDays = new WeatherPayload[WearForecastPlanner.SLOTS];
+    private final Asset[] mDayArt = new Asset[WearForecastPlanner.SLOTS];
+    private boolean mLoadedFromCache;
+    // Set when art the phone sent couldn't be decoded, e.g. asked for before connecting, so it's
+    // asked for again once connected
+    private boolean mArtDecodeFailed;
+
+    // Today's icon with its IconDecoder key, saved with the forecast so it's decoded already
+    // next time
+    private Bitmap mTodayIcon;
+    private String mTodayIconKey;
+
+    private boolean mSavePending;
+    private final Runnable mSaveCache = new Runnable() {
+        @Override
+        public void run() {
+            saveCache();
+        }
+    };
+
+    static synchronized ForecastRepository getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new ForecastRepository(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private ForecastRepository(Context context) {
+        mWearConnector = new WearConnector(context);
+        mIconDecoder = new IconDecoder(context.getResources(),
+                (int) context.getResources().getDimension(R.dimen.bitmap_size));
+        mWeatherCache = new WeatherCache(context);
+        loadCache();
+    }
+
+    /**
+     * Starts calling back the listener on changes, connecting to the phone if it's the first.
+     */
+    void addListener(Listener listener) {
+        if (mListeners.contains(listener)) {
+            return;
+        }
+        mListeners.add(listener);
+        if (mListeners.size() == 1) {
+            mWearConnector.connect(this);
+        }
+    }
+
+    /**
+     * Stops calling back the listener, disconnecting from the phone if it was the last.
+     */
+    void removeListener(Listener listener) {
+        if (!mListeners.remove(listener) || !mListeners.isEmpty()) {
+            return;
+        }
+        mWearConnector.disconnect();
+        // Nothing will change until the next listener, so there's no point waiting to save
+        if (mSavePending) {
+            mHandler.removeCallbacks(mSaveCache);
+            saveCache();
+        }
+    }
+
+    /**
+     * @return the weather for the day, or null if the phone hasn't sent it
+     */
+    WeatherPayload getDay(int julianDay) {
+        WeatherPayload day = mDays[WearForecastPlanner.slotFor(julianDay)];
+        return day != null && day.julianDay == julianDay ? day : null;
+    }
+
+    /**
+     * Decodes the icon for the day, at the watch face's icon size: the art the phone sent with
+     * it, or the bundled art for its condition.
+     * @param callback called right away if the icon was decoded before
+     * @return false if the day has no icon, when the callback isn't called
+     */
+    boolean getIcon(final int julianDay, final IconDecoder.Callback callback) {
+        int slot = WearForecastPlanner.slotFor(julianDay);
+        WeatherPayload day = getDay(julianDay);
+        if (day == null) {
+            return false;
+        }
+
+        Asset art = mDayArt[slot];
+        final boolean sentArt = art != null;
+        int artKey = WeatherArt.getArtKey(day.weatherId);
+        if (art == null && artKey == WeatherArt.UNKNOWN) {
+            return false;
+        }
+        final String iconKey = art != null
+                ? IconDecoder.keyFor(art) : IconDecoder.keyFor(ART_RESOURCES[artKey]);
+
+        IconDecoder.Callback rememberToday = new IconDecoder.Callback() {
+            @Override
+            public void onIconDecoded(Bitmap icon) {
+                if (icon == null && sentArt) {
+                    mArtDecodeFailed = true;
+                }
+                if (icon != null && !iconKey.equals(mTodayIconKey) && julianDay == getToday()) {
+                    mTodayIcon = icon;
+                    mTodayIconKey = iconKey;
+                    scheduleSave();
+                }
+                callback.onIconDecoded(icon);
+            }
+        };
+        if (art != null) {
+            mIconDecoder.decode(mWearConnector.getGoogleApiClient(), art, rememberToday);
+        } else {
+            mIconDecoder.decode(ART_RESOURCES[artKey], rememberToday);
+        }
+        return true;
+    }
+
+    /**
+     * @return whether the forecast was there from the last time the watch heard from the phone
+     */
+    boolean isLoadedFromCache() {
+        return mLoadedFromCache;
+    }
+
+    private static int getToday() {
+        Time time = new Time();
+        time.setToNow();
+        return Time.getJulianDay(time.toMillis(false), time.gmtoff);
+    }
+
+    @Override
+    public void onConnected() {
+        mWearConnector.startListeningForData(this);
+        // Catches up with anything sent while the watch wasn't listening, the cache may be
+        // behind
+        mWearConnector.fetchForecast();
+        // The fetch won't tell the listeners about days they already have, so art that couldn't
+        // be decoded before connecting is asked for again this way
+        if (mArtDecodeFailed) {
+            mArtDecodeFailed = false;
+            notifyListeners();
+        }
+    }
+
+    @Override
+    public void onError(String error) {
+        Log.d(TAG, error);
+    }
+
+    /**
+     * This method is called whenever a day of the forecast is changed from the mobile app
+     * @param icon custom art from the phone, or null to use the bundled art
+     */
+    @Override
+    public void onDataChanged(WeatherPayload payload, Asset icon) {
+        int slot = WearForecastPlanner.slotFor(payload.julianDay);
+        if (payload.equals(mDays[slot]) && isSameArt(mDayArt[slot], icon)) {
+            // Nothing new, e.g. the cache already had it
+            return;
+        }
+        mDays[slot] = payload;
+        mDayArt[slot] = icon;
+        scheduleSave();
+        notifyListeners();
+    }
+
+    private void notifyListeners() {
+        for (int i = mListeners.size() - 1; i >= 0; i--) {
+            mListeners.get(i).onForecastChanged();
+        }
+    }
+
+    private static boolean isSameArt(Asset art, Asset otherArt) {
+        if (art == null || otherArt == null) {
+            return art == otherArt;
+        }
+        return art.getDigest() != null && art.getDigest().equals(otherArt.getDigest());
+    }
+
+    /**
+     * Loads the weather last received, to have it before the phone is heard from.
+     */
+    private void loadCache() {
+        WeatherCache.Snapshot snapshot = mWeatherCache.load();
+        if (snapshot == null) {
+            return;
+        }
+        mLoadedFromCache = true;
+        for (int slot = 0; slot < WearForecastPlanner.SLOTS; slot++) {
+            mDays[slot] = snapshot.days[slot];
+            String digest = snapshot.artDigests[slot];
+            mDayArt[slot] = digest == null ? null : Asset.createFromRef(digest);
+        }
+        if (snapshot.icon != null) {
+            // Picked up from the decoder's cache when the icon is asked for
+            mTodayIcon = snapshot.icon;
+            mTodayIconKey = snapshot.iconKey;
+            mIconDecoder.put(snapshot.iconKey, snapshot.icon);
+        }
+    }
+
+    private void scheduleSave() {
+        mSavePending = true;
+        mHandler.removeCallbacks(mSaveCache);
+        mHandler.postDelayed(mSaveCache, SAVE_CACHE_DELAY_MS);
+    }
+
+    private void saveCache() {
+        mSavePending = false;
+        WeatherCache.Snapshot snapshot = new WeatherCache.Snapshot();
+        for (int slot = 0; slot < WearForecastPlanner.SLOTS; slot++) {
+            snapshot.days[slot] = mDays[slot];
+            snapshot.artDigests[slot] = mDayArt[slot] == null ? null : mDayArt[slot].getDigest();
+        }
+        snapshot.iconKey = mTodayIconKey;
+        snapshot.icon = mTodayIcon;
+        mWeatherCache.save(snapshot);
+    }
+}
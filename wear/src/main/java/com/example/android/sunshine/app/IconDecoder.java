@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.LruCache;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes weather icons for the watch face, straight to the size they're drawn at.
+ *
+ * Decoding happens on a single background thread, using the connector's client which is already
+ * connected, and results are delivered on the main thread.  Icons are cached by asset digest (or
+ * by resource for the bundled art), so an icon the phone sends again isn't decoded twice.
+ */
+class IconDecoder {
+
+    private static final String TAG = IconDecoder.class.getSimpleName();
+
+    private static final long ASSET_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(2);
+    private static final long CONNECT_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+
+    interface Callback {
+        /**
+         * Called on the main thread, right away if the icon was cached.
+         * @param icon the icon at the decoder's size, or null if it couldn't be decoded
+         */
+        void onIconDecoded(Bitmap icon);
+    }
+
+    private final Resources mResources;
+    private final int mSize;
+    private final LruCache<String, Bitmap> mCache;
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * @param size the width and height icons are drawn at, in pixels
+     */
+    IconDecoder(Resources resources, int size) {
+        mResources = resources;
+        mSize = size;
+        // A screenful of forecast icons fits many times over
+        mCache = new LruCache<String, Bitmap>((int) (Runtime.getRuntime().maxMemory() / 32)) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Decodes art the phone sent.
+     * @param client a connected client, or one that's connecting, which the decoder waits for,
+     *               e.g. for art saved across restarts and shown on the first frame.  The decoder
+     *               doesn't connect or disconnect it otherwise.
+     */
+    void decode(final GoogleApiClient client, final Asset asset, Callback callback) {
+        final String key = keyFor(asset);
+        if (deliverCached(key, callback)) {
+            return;
+        }
+        submit(key, callback, new Source() {
+            @Override
+            public byte[] read() throws IOException {
+                if (!client.isConnected()) {
+                    // The decoder thread can wait, while connecting this only waits for it
+                    if (!client.isConnecting() || !client.blockingConnect(CONNECT_TIMEOUT_MS,
+                            TimeUnit.MILLISECONDS).isSuccess()) {
+                        return null;
+                    }
+                }
+                DataApi.GetFdForAssetResult result = Wearable.DataApi.getFdForAsset(client, asset)
+                        .await(ASSET_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                InputStream in = result.getInputStream();
+                if (!result.getStatus().isSuccess() || in == null) {
+                    return null;
+                }
+                try {
+                    return readFully(in);
+                } finally {
+                    in.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Decodes the watch's own art.
+     */
+    void decode(final int resourceId, Callback callback) {
+        final String key = keyFor(resourceId);
+        if (deliverCached(key, callback)) {
+            return;
+        }
+        submit(key, callback, new Source() {
+            @Override
+            public byte[] read() throws IOException {
+                InputStream in = mResources.openRawResource(resourceId);
+                try {
+                    return readFully(in);
+                } finally {
+                    in.close();
+                }
+            }
+        });
+    }
+
+    /**
+     * Caches an icon decoded earlier, e.g. one saved across restarts.
+     * @param key the icon's {@link #keyFor} key
+     * @param icon the icon, at the decoder's size
+     */
+    void put(String key, Bitmap icon) {
+        mCache.put(key, icon);
+    }
+
+    static String keyFor(Asset asset) {
+        return "asset:" + asset.getDigest();
+    }
+
+    static String keyFor(int resourceId) {
+        return "res:" + resourceId;
+    }
+
+    private boolean deliverCached(String key, Callback callback) {
+        Bitmap icon = mCache.get(key);
+        if (icon == null) {
+            return false;
+        }
+        callback.onIconDecoded(icon);
+        return true;
+    }
+
+    private interface Source {
+        byte[] read() throws IOException;
+    }
+
+    private void submit(final String key, final Callback callback, final Source source) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // An earlier request for the same icon may have decoded it while this one waited
+                Bitmap icon = mCache.get(key);
+                if (icon == null) {
+                    icon = decodeNow(key, source);
+                    if (icon != null) {
+                        mCache.put(key, icon);
+                    }
+                }
+
+                final Bitmap decoded = icon;
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onIconDecoded(decoded);
+                    }
+                });
+            }
+        });
+    }
+
+    private Bitmap decodeNow(String key, Source source) {
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        byte[] bytes;
+        try {
+            bytes = source.read();
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't read " + key, e);
+            return null;
+        }
+        if (bytes == null) {
+            Log.d(TAG, "Couldn't read " + key);
+            return null;
+        }
+
+        // Only the bounds first, to skip decoding the pixels that would be scaled away
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, mSize);
+        // The size is in pixels already, the art's density doesn't matter
+        options.inScaled = false;
+        Bitmap sampled = BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        if (sampled == null) {
+            return null;
+        }
+
+        Bitmap icon = sampled;
+        if (sampled.getWidth() != mSize || sampled.getHeight() != mSize) {
+            icon = Bitmap.createScaledBitmap(sampled, mSize, mSize, true);
+            if (icon != sampled) {
+                sampled.recycle();
+            }
+        }
+
+        if (BuildConfig.DEBUG) {
+            Log.d(TAG, "Decoded " + key + " (" + options.outWidth + "x" + options.outHeight
+                    + ", sample " + options.inSampleSize + ") in "
+                    + TimeUnit.NANOSECONDS.toMicros(SystemClock.elapsedRealtimeNanos() - startNanos)
+                    + "us");
+        }
+        return icon;
+    }
+
+    /**
+     * @return the largest power of 2 the image can be sampled down by and still be at least
+     * size in both directions
+     */
+    static int calculateInSampleSize(int width, int height, int size) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= size && height / (sampleSize * 2) >= size) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+}
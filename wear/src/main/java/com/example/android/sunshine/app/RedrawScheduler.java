@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Works out when the watch face next needs to be drawn in interactive mode.
+ *
+ * The face shows hours and minutes, so it only changes on the minute and the redraws are aligned
+ * to minute boundaries.  In seconds mode, for a blinking colon, they are aligned to seconds
+ * instead.  Redraws for other reasons (new weather, taps, ambient mode) aren't scheduled here, the
+ * engine draws right away for those.
+ */
+class RedrawScheduler {
+
+    static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+    static final long SECOND_MS = TimeUnit.SECONDS.toMillis(1);
+
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final Clock mClock;
+    private boolean mSecondsMode;
+
+    RedrawScheduler(Clock clock) {
+        mClock = clock;
+    }
+
+    void setSecondsMode(boolean secondsMode) {
+        mSecondsMode = secondsMode;
+    }
+
+    boolean isSecondsMode() {
+        return mSecondsMode;
+    }
+
+    /**
+     * @return how long until the next redraw, which is on the next minute, or second in seconds
+     * mode.  Never 0, a redraw right on the boundary waits for the next one.
+     */
+    long getDelayMillis() {
+        long period = mSecondsMode ? SECOND_MS : MINUTE_MS;
+        return period - (mClock.currentTimeMillis() % period);
+    }
+}
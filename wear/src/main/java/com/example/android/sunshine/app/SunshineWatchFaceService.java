@@ -23,46 +23,32 @@ import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Color;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.wearable.watchface.CanvasWatchFaceService;
 import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.Time;
+import android.util.Log;
 import android.view.SurfaceHolder;
 import android.view.WindowInsets;
 
-import com.example.android.sunshine.common.WearConnector;
+import com.example.android.sunshine.common.WeatherPayload;
 
 import java.lang.ref.WeakReference;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face showing hours and minutes, redrawn on the minute in interactive mode (or every
+ * second when the colon blinks). Ambient mode has its own renderer, drawn once a minute on the
+ * time tick, which handles low-bit and burn-in protected screens.
  */
 public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
-    private static final Typeface BOLD_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
-
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
-    /**
-     * Update rate in milliseconds for interactive mode. We update once a second since seconds are
-     * displayed in interactive mode.
-     */
-    private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final String TAG = SunshineWatchFaceService.class.getSimpleName();
 
     /**
      * Handler message id for updating the time periodically in interactive mode.
@@ -95,26 +81,13 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         }
     }
 
-    private class Engine extends CanvasWatchFaceService.Engine implements WearConnector.ConnectionInterface, WearConnector.SunshineDataInterface {
+    private class Engine extends CanvasWatchFaceService.Engine implements ForecastRepository.Listener {
 
         final Handler mUpdateTimeHandler = new EngineHandler(this);
+        // When the next interactive redraw is due, on the minute unless the colon blinks
+        final RedrawScheduler mRedrawScheduler = new RedrawScheduler(RedrawScheduler.SYSTEM_CLOCK);
         boolean mRegisteredTimeZoneReceiver = false;
 
-        // Paint objects
-        Paint mBackgroundPaint;
-        Paint mHourPaint;
-        Paint mMinutePaint;
-        Paint mColonPaint;
-        Paint mDatePaint;
-        Paint mDivisionLinePaint;
-        Paint mHighTempPaint;
-        Paint mLowTempPaint;
-
-        // Calendar related objects
-        Calendar mCalendar;
-        Date mDate;
-        java.text.DateFormat mDateFormat;
-
         boolean mAmbient;
         Time mTime;
 
@@ -122,34 +95,38 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mTime.clear(intent.getStringExtra("time-zone"));
+                String timeZone = intent.getStringExtra("time-zone");
+                mTime.clear(timeZone);
                 mTime.setToNow();
+                mRenderer.setTimeZone(TimeZone.getTimeZone(timeZone));
+                mAmbientRenderer.setTimeZone(TimeZone.getTimeZone(timeZone));
             }
         };
 
         int mTapCount;
 
-        // Drawing Offset variables
-        float mYOffset;
-        float mLineHeight;
-        float mYOffsetBitmap;
-
-        String mHighTemperature = "";
-        String mLowTemperature = "";
-        Bitmap mWeatherIconBitmap = null;
+        // Draws the face, the engine only keeps it up to date
+        WatchFaceRenderer mRenderer;
+        AmbientRenderer mAmbientRenderer;
 
-        /**
-         * Whether the display supports fewer bits for each color in ambient mode. When true, we
-         * disable anti-aliasing in ambient mode.
-         */
-        boolean mLowBitAmbient;
+        // The forecast from the phone, shared with anything else on the watch showing it
+        ForecastRepository mForecast;
+        boolean mListeningForForecast;
+        // The Julian day the weather shown is for, or -1 to pick it again on the next draw
+        int mShownJulianDay = -1;
+        // Whether the weather is being picked during a draw, when a cached icon needs no redraw
+        boolean mPickingWeather;
+        // The icon last shown, or null if none has been yet
+        Bitmap mShownIcon;
 
-        // Creates the Connector object for receiving data from the mobile app
-        WearConnector mWearConnector = new WearConnector(SunshineWatchFaceService.this);
+        // For measuring how long the first frame with the whole weather takes
+        long mCreatedNanos;
+        boolean mCompleteFrameDrawn;
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
+            mCreatedNanos = SystemClock.elapsedRealtimeNanos();
 
             setWatchFaceStyle(new WatchFaceStyle.Builder(SunshineWatchFaceService.this)
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
@@ -158,97 +135,53 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                     .setAcceptsTapEvents(true)
                     .build());
 
-            Resources resources = SunshineWatchFaceService.this.getResources();
-
-            initPaintObjects(resources);
-            initCalendarObjects();
-        }
-
-        /**
-         * Initialize the different Paint objects used for drawing text on the Canvas
-         * @param resources
-         */
-        private void initPaintObjects(Resources resources) {
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(resources.getColor(R.color.background));
-
-            mHourPaint = new Paint();
-            mHourPaint = createTextPaint(resources.getColor(R.color.digital_text), BOLD_TYPEFACE);
-
-            mMinutePaint = new Paint();
-            mMinutePaint = createTextPaint(resources.getColor(R.color.digital_text), NORMAL_TYPEFACE);
-
-            mColonPaint = new Paint();
-            mColonPaint = createTextPaint(resources.getColor(R.color.digital_text), NORMAL_TYPEFACE);
-
-            mDatePaint = new Paint();
-            mDatePaint = createTextPaint(resources.getColor(R.color.digital_text), NORMAL_TYPEFACE);
-            mDatePaint.setAlpha(175);
-
-            mDivisionLinePaint = new Paint();
-            mDivisionLinePaint.setColor(getResources().getColor(R.color.digital_text));
-            mDivisionLinePaint.setAlpha(75);
-
-            mHighTempPaint = createTextPaint(resources.getColor(R.color.digital_text), BOLD_TYPEFACE);
-
-            mLowTempPaint = new Paint();
-            mLowTempPaint.setColor(getResources().getColor(R.color.digital_text));
-            mLowTempPaint.setAlpha(175);
-
-        }
-
-        /**
-         * Initialize the Calendar objects with the date format
-         */
-        private void initCalendarObjects() {
-
             mTime = new Time();
-            mCalendar = Calendar.getInstance();
-            mDate = new Date();
+            mRenderer = new WatchFaceRenderer(SunshineWatchFaceService.this.getResources());
+            mAmbientRenderer = new AmbientRenderer(SunshineWatchFaceService.this.getResources());
+            mRedrawScheduler.setSecondsMode(getResources().getBoolean(R.bool.blink_colon));
 
-            initDateFormat();
-        }
-
-        private void initDateFormat() {
-            mDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", Locale.getDefault());
-            mDateFormat.setCalendar(mCalendar);
+            // The forecast last received is loaded here, if this is the first to ask for it
+            mForecast = ForecastRepository.getInstance(SunshineWatchFaceService.this);
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            stopListeningForForecast();
+            mRenderer.release();
+            mAmbientRenderer.release();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor, Typeface typeface) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
 
             if (visible) {
 
-                // Connects the weareable connector
-                mWearConnector.connect(this);
+                // Listens for the forecast, which connects to the phone
+                startListeningForForecast();
 
                 registerReceiver();
 
                 // Update time zone in case it changed while we weren't visible.
                 mTime.clear(TimeZone.getDefault().getID());
                 mTime.setToNow();
+                mRenderer.setTimeZone(TimeZone.getDefault());
+                mAmbientRenderer.setTimeZone(TimeZone.getDefault());
 
             } else {
                 unregisterReceiver();
 
-                // Disconnects the wereable connector
-                mWearConnector.disconnect();
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "While visible: " + mRenderer.getFrameStats() + "; "
+                            + mAmbientRenderer.getFrameStats());
+                }
+                mRenderer.resetFrameStats();
+                mAmbientRenderer.resetFrameStats();
+
+                // Stops listening for the forecast, disconnecting from the phone if nothing else is
+                stopListeningForForecast();
             }
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -256,6 +189,24 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
+        private void startListeningForForecast() {
+            if (mListeningForForecast) {
+                return;
+            }
+            mListeningForForecast = true;
+            mForecast.addListener(this);
+            // The forecast may have changed while we weren't listening
+            mShownJulianDay = -1;
+        }
+
+        private void stopListeningForForecast() {
+            if (!mListeningForForecast) {
+                return;
+            }
+            mListeningForForecast = false;
+            mForecast.removeListener(this);
+        }
+
         private void registerReceiver() {
             if (mRegisteredTimeZoneReceiver) {
                 return;
@@ -278,39 +229,16 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onApplyWindowInsets(insets);
 
             // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFaceService.this.getResources();
-            boolean isRound = insets.isRound();
-
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
-
-            float dateTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_date_text_size_round : R.dimen.digital_date_text_size);
-
-            float tempTextSize = resources.getDimension(isRound
-                    ? R.dimen.digital_temp_text_size_round : R.dimen.digital_temp_text_size);
-
-            mYOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_y_offset_round : R.dimen.digital_y_offset);
-
-            mLineHeight = resources.getDimension(isRound
-                    ? R.dimen.digital_line_height_round : R.dimen.digital_line_height);
-
-            mYOffsetBitmap = resources.getDimension(isRound
-                    ? R.dimen.weather_icon_y_offset_round : R.dimen.weather_icon_y_offset);
-
-            mHourPaint.setTextSize(textSize);
-            mMinutePaint.setTextSize(textSize);
-            mColonPaint.setTextSize(textSize);
-            mDatePaint.setTextSize(dateTextSize);
-            mLowTempPaint.setTextSize(tempTextSize);
-            mHighTempPaint.setTextSize(tempTextSize);
+            mRenderer.setRound(SunshineWatchFaceService.this.getResources(), insets.isRound());
+            mAmbientRenderer.setRound(SunshineWatchFaceService.this.getResources(), insets.isRound());
         }
 
         @Override
         public void onPropertiesChanged(Bundle properties) {
             super.onPropertiesChanged(properties);
-            mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mAmbientRenderer.setAmbientProperties(
+                    properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false),
+                    properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false));
         }
 
         @Override
@@ -326,16 +254,6 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             if (mAmbient != inAmbientMode) {
 
                 mAmbient = inAmbientMode;
-
-                if (mLowBitAmbient) {
-                    mHourPaint.setAntiAlias(!inAmbientMode);
-                    mMinutePaint.setAntiAlias(!inAmbientMode);
-                    mColonPaint.setAntiAlias(!inAmbientMode);
-                    mDatePaint.setAntiAlias(!inAmbientMode);
-                    mHighTempPaint.setAntiAlias(!inAmbientMode);
-                    mLowTempPaint.setAntiAlias(!inAmbientMode);
-                }
-
                 invalidate();
             }
 
@@ -361,7 +279,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                 case TAP_TYPE_TAP:
                     // The user has completed the tap gesture.
                     mTapCount++;
-                    mBackgroundPaint.setColor(resources.getColor(mTapCount % 2 == 0 ?
+                    mRenderer.setBackgroundColor(resources.getColor(mTapCount % 2 == 0 ?
                             R.color.background : R.color.background2));
                     break;
             }
@@ -373,80 +291,29 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         public void onDraw(Canvas canvas, Rect bounds) {
 
             long now = System.currentTimeMillis();
+            mTime.set(now);
+            int julianDay = Time.getJulianDay(now, mTime.gmtoff);
+            showWeatherForDay(julianDay);
 
-            mCalendar.setTimeInMillis(now);
-            mDate.setTime(now);
-
-            // Draw the background.
+            // Only render the weather if there is no peek card, so they do not bleed into each
+            // other in ambient mode.
+            boolean showWeather = getPeekCardPosition().isEmpty();
             if (isInAmbientMode()) {
-                canvas.drawColor(Color.BLACK);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
+                mAmbientRenderer.draw(canvas, bounds, now, julianDay, mTime.hour, mTime.minute,
+                        showWeather);
+                return;
             }
-
-            mTime.setToNow();
-
-            String hourText =  String.format("%d", mTime.hour);
-            String colon = ":";
-            String minuteText = String.format("%02d", mTime.minute);
-
-            // Gets the total Width of the time so we can center the text on the screen
-            float timeTotalWidth = mHourPaint.measureText(hourText) + mColonPaint.measureText(colon) + mMinutePaint.measureText(minuteText);
-
-            // Calculates the start X position for each text
-            float hoursStartX = bounds.centerX() - timeTotalWidth / 2;
-            float colonStartX = hoursStartX + mHourPaint.measureText(hourText);
-            float minutesStartX = colonStartX + mColonPaint.measureText(colon);
-
-            // Draws all the time components on the screen
-            canvas.drawText(hourText, hoursStartX,mYOffset,mHourPaint);
-            canvas.drawText(colon, colonStartX,mYOffset,mColonPaint);
-            canvas.drawText(minuteText, minutesStartX, mYOffset, mMinutePaint);
-
-            // Gets the Current Date Text
-            String dateText = mDateFormat.format(mDate).toUpperCase(Locale.US);
-
-            float datePosX = bounds.centerX() - mDatePaint.measureText(dateText) / 2; // This will center the text on the screen
-            float datePosY = mYOffset + mLineHeight;
-
-            // Draws the current date
-            canvas.drawText(
-                    dateText,
-                    datePosX, datePosY, mDatePaint);
-
-            // Only render the day of week and date if there is no peek card, so they do not bleed
-            // into each other in ambient mode.
-            if (getPeekCardPosition().isEmpty()) {
-
-                if (!mAmbient) {
-
-                    // Calculates the divider position
-                    float dividerStartX = bounds.centerX() - getResources().getDimension(R.dimen.division_line_width) / 2;
-                    float dividerStopX = dividerStartX + getResources().getDimension(R.dimen.division_line_width);
-                    float dividerPosY = bounds.centerY() + mLineHeight/2;
-
-                    // Draws a very cool Divider Line
-                    canvas.drawLine(dividerStartX, dividerPosY, dividerStopX, dividerPosY, mDivisionLinePaint);
-
-                    // Weather Image representation
-                    float bitmapY = bounds.centerY() + mYOffsetBitmap;
-
-                    if (mWeatherIconBitmap != null) {
-
-                        // Gets the total Width of the temperature section so we can center the text on the screen
-                        float temperatureTotalWidth = mWeatherIconBitmap.getWidth() + (int)getResources().getDimension(R.dimen.temp_max_x_offset) + mHighTempPaint.measureText(mHighTemperature) + (int)getResources().getDimension(R.dimen.temp_min_x_offset) + mLowTempPaint.measureText(mLowTemperature);
-
-                        float bitmapStartX = bounds.centerX() - temperatureTotalWidth / 2;
-                        float tempHighStartX = bitmapStartX + mWeatherIconBitmap.getWidth() + (int)getResources().getDimension(R.dimen.temp_max_x_offset);
-                        float tempLowStartX = tempHighStartX + mHighTempPaint.measureText(mHighTemperature) + (int)getResources().getDimension(R.dimen.temp_min_x_offset);
-
-                        int tempPosY = (int)bitmapY + mWeatherIconBitmap.getHeight() / 2 + (int)mLineHeight / 2;
-                        canvas.drawBitmap(mWeatherIconBitmap, bitmapStartX, bitmapY, null);
-                        canvas.drawText(mHighTemperature, tempHighStartX, tempPosY, mHighTempPaint);
-                        canvas.drawText(mLowTemperature, tempLowStartX, tempPosY, mLowTempPaint);
-
-                    }
-
+            boolean showColon = !mRedrawScheduler.isSecondsMode() || mTime.second % 2 == 0;
+            mRenderer.draw(canvas, bounds, now, julianDay, mTime.hour, mTime.minute, showColon,
+                    showWeather);
+
+            if (!mCompleteFrameDrawn && mShownIcon != null) {
+                mCompleteFrameDrawn = true;
+                if (BuildConfig.DEBUG) {
+                    Log.d(TAG, "First frame with the weather "
+                            + TimeUnit.NANOSECONDS.toMillis(SystemClock.elapsedRealtimeNanos() - mCreatedNanos)
+                            + "ms after onCreate, " + (mForecast.isLoadedFromCache() ? "from" : "without")
+                            + " the cache");
                 }
             }
         }
@@ -471,42 +338,68 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         }
 
         /**
-         * Handle updating the time periodically in interactive mode.
+         * Handle updating the time periodically in interactive mode.  Only the minute is shown,
+         * so this wakes up on the minute (or second, if the colon blinks) rather than every
+         * second.
          */
         private void handleUpdateTimeMessage() {
             invalidate();
             if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
+                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME,
+                        mRedrawScheduler.getDelayMillis());
             }
         }
 
         @Override
-        public void onConnected() {
-            mWearConnector.startListeningForData(this);
-        }
-
-        @Override
-        public void onError(String error) {
-
+        public void onForecastChanged() {
+            // Today's weather is picked again on the next draw, in case this was it.  The ambient
+            // face waits for the next time tick.
+            mShownJulianDay = -1;
+            if (!isInAmbientMode()) {
+                invalidate();
+            }
         }
 
         /**
-         * This method is called whenever the data is changed from the mobile app
-         * @param highTemp
-         * @param lowTemp
-         * @param bitmap
+         * Shows the weather for the day, if it's not shown already.  The phone sends the whole
+         * forecast, so the next day's weather is there when midnight passes.  The icon is shown
+         * once it's decoded, straight away if it was decoded before.
          */
-        @Override
-        public void onDataChanged(String highTemp, String lowTemp, Bitmap bitmap) {
+        private void showWeatherForDay(final int julianDay) {
+            if (julianDay == mShownJulianDay) {
+                return;
+            }
+            mShownJulianDay = julianDay;
 
-            mHighTemperature = highTemp;
-            mLowTemperature = lowTemp;
-            mWeatherIconBitmap = Bitmap.createScaledBitmap(bitmap,(int)getResources().getDimension(R.dimen.bitmap_size),(int)getResources().getDimension(R.dimen.bitmap_size),true);
+            final WeatherPayload day = mForecast.getDay(julianDay);
+            if (day == null) {
+                // Nothing for today
+                mRenderer.setWeather("", "", null);
+                mAmbientRenderer.setWeather("", "");
+                return;
+            }
 
-            invalidate();
+            final String high = day.formatHigh();
+            final String low = day.formatLow();
+            mRenderer.setWeather(high, low, null);
+            mAmbientRenderer.setWeather(high, low);
+
+            mPickingWeather = true;
+            mForecast.getIcon(julianDay, new IconDecoder.Callback() {
+                @Override
+                public void onIconDecoded(Bitmap icon) {
+                    // The weather may have moved on while the icon was decoded
+                    if (icon != null && mShownJulianDay == julianDay
+                            && mForecast.getDay(julianDay) == day) {
+                        mRenderer.setWeather(high, low, icon);
+                        mShownIcon = icon;
+                        if (!mPickingWeather && !isInAmbientMode()) {
+                            invalidate();
+                        }
+                    }
+                }
+            });
+            mPickingWeather = false;
         }
     }
 }
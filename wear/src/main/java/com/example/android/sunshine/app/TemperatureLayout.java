@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+/**
+ * Where the weather icon and the high and low temperatures go: the icon, then the high, then the
+ * low, centered as a row below the middle of the face with the text centered on the icon.
+ *
+ * It's computed when the weather, the screen shape or the face size change, so drawing only has
+ * to read the positions.  This has no Android dependencies.
+ */
+class TemperatureLayout {
+
+    float iconX;
+    float iconY;
+    float highX;
+    float lowX;
+    // The baseline of both temperatures
+    float textY;
+
+    /**
+     * @param centerX the middle of the face
+     * @param centerY the middle of the face
+     * @param iconYOffset how far below the middle the icon's top is
+     * @param highXOffset the gap between the icon and the high temperature
+     * @param lowXOffset the gap between the high and low temperatures
+     */
+    void compute(float centerX, float centerY, int iconWidth, int iconHeight, float highWidth,
+                 float lowWidth, float iconYOffset, float highXOffset, float lowXOffset,
+                 float lineHeight) {
+        float totalWidth = iconWidth + highXOffset + highWidth + lowXOffset + lowWidth;
+
+        iconX = centerX - totalWidth / 2;
+        iconY = centerY + iconYOffset;
+        highX = iconX + iconWidth + highXOffset;
+        lowX = highX + highWidth + lowXOffset;
+        textY = (int) iconY + iconHeight / 2 + (int) lineHeight / 2;
+    }
+}
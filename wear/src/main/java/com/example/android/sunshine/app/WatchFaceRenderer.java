@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the watch face in interactive mode, see {@link AmbientRenderer} for ambient mode.
+ *
+ * {@link #draw} runs every time the face is drawn, so it doesn't allocate: the hour and minute
+ * strings are built once for every value, the date is formatted again only when the day changes,
+ * text is measured only when it changes, the dimensions are read once per window insets and the
+ * weather row's positions are kept in a {@link TemperatureLayout}.
+ *
+ * Only the time changes from one frame to the next, so everything else (the background, the date,
+ * the divider and the weather) is drawn into an offscreen layer, drawn again only when one of
+ * those changes.  A frame is then the layer and the time.
+ */
+class WatchFaceRenderer {
+
+    private static final Typeface BOLD_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    private static final String COLON = ":";
+
+    // "%d" for each hour and "%02d" for each minute
+    private static final String[] HOURS = new String[24];
+    private static final String[] MINUTES = new String[60];
+    static {
+        for (int i = 0; i < HOURS.length; i++) {
+            HOURS[i] = Integer.toString(i);
+        }
+        for (int i = 0; i < MINUTES.length; i++) {
+            MINUTES[i] = i < 10 ? "0" + i : Integer.toString(i);
+        }
+    }
+
+    // Paint objects
+    private final Paint mBackgroundPaint;
+    private final Paint mHourPaint;
+    private final Paint mMinutePaint;
+    private final Paint mColonPaint;
+    private final Paint mDatePaint;
+    private final Paint mDivisionLinePaint;
+    private final Paint mHighTempPaint;
+    private final Paint mLowTempPaint;
+
+    // Widths of every hour and minute string, and of the colon, at the current text size
+    private final float[] mHourWidths = new float[HOURS.length];
+    private final float[] mMinuteWidths = new float[MINUTES.length];
+    private float mColonWidth;
+
+    // Calendar related objects
+    private final Calendar mCalendar = Calendar.getInstance();
+    private final Date mDate = new Date();
+    private final DateFormat mDateFormat;
+    private String mDateText = "";
+    private float mDateWidth;
+    // The Julian day the date text is for, or -1 to format it again on the next draw
+    private int mDateJulianDay = -1;
+
+    // Drawing Offset variables
+    private float mYOffset;
+    private float mLineHeight;
+    private float mYOffsetBitmap;
+    private final float mDivisionLineWidth;
+    private final float mTempMaxXOffset;
+    private final float mTempMinXOffset;
+
+    private String mHighTemperature = "";
+    private String mLowTemperature = "";
+    private float mHighTemperatureWidth;
+    private float mLowTemperatureWidth;
+    private Bitmap mWeatherIconBitmap;
+    // Where the weather goes, computed again when mTemperatureLayoutDirty is set
+    private final TemperatureLayout mTemperatureLayout = new TemperatureLayout();
+    private boolean mTemperatureLayoutDirty = true;
+
+    // Everything but the time, drawn again when mLayerDirty is set or what it was drawn for changes
+    private Bitmap mLayer;
+    private Canvas mLayerCanvas;
+    private boolean mLayerDirty = true;
+    private boolean mLayerShowWeather;
+
+    // Frame stats
+    private int mFrameCount;
+    private int mLayerDrawCount;
+    private long mTotalFrameNanos;
+    private long mMaxFrameNanos;
+
+    WatchFaceRenderer(Resources resources) {
+        int textColor = resources.getColor(R.color.digital_text);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(resources.getColor(R.color.background));
+
+        mHourPaint = createTextPaint(textColor, BOLD_TYPEFACE);
+        mMinutePaint = createTextPaint(textColor, NORMAL_TYPEFACE);
+        mColonPaint = createTextPaint(textColor, NORMAL_TYPEFACE);
+
+        mDatePaint = createTextPaint(textColor, NORMAL_TYPEFACE);
+        mDatePaint.setAlpha(175);
+
+        mDivisionLinePaint = new Paint();
+        mDivisionLinePaint.setColor(textColor);
+        mDivisionLinePaint.setAlpha(75);
+
+        mHighTempPaint = createTextPaint(textColor, BOLD_TYPEFACE);
+
+        mLowTempPaint = new Paint();
+        mLowTempPaint.setColor(textColor);
+        mLowTempPaint.setAlpha(175);
+
+        mDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", Locale.getDefault());
+        mDateFormat.setCalendar(mCalendar);
+
+        mDivisionLineWidth = resources.getDimension(R.dimen.division_line_width);
+        mTempMaxXOffset = (int) resources.getDimension(R.dimen.temp_max_x_offset);
+        mTempMinXOffset = (int) resources.getDimension(R.dimen.temp_min_x_offset);
+    }
+
+    private static Paint createTextPaint(int textColor, Typeface typeface) {
+        Paint paint = new Paint();
+        paint.setColor(textColor);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Loads the sizes that have alternate values for round watches.
+     */
+    void setRound(Resources resources, boolean isRound) {
+        float textSize = resources.getDimension(isRound
+                ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
+
+        float dateTextSize = resources.getDimension(isRound
+                ? R.dimen.digital_date_text_size_round : R.dimen.digital_date_text_size);
+
+        float tempTextSize = resources.getDimension(isRound
+                ? R.dimen.digital_temp_text_size_round : R.dimen.digital_temp_text_size);
+
+        mYOffset = resources.getDimension(isRound
+                ? R.dimen.digital_y_offset_round : R.dimen.digital_y_offset);
+
+        mLineHeight = resources.getDimension(isRound
+                ? R.dimen.digital_line_height_round : R.dimen.digital_line_height);
+
+        mYOffsetBitmap = resources.getDimension(isRound
+                ? R.dimen.weather_icon_y_offset_round : R.dimen.weather_icon_y_offset);
+
+        mHourPaint.setTextSize(textSize);
+        mMinutePaint.setTextSize(textSize);
+        mColonPaint.setTextSize(textSize);
+        mDatePaint.setTextSize(dateTextSize);
+        mLowTempPaint.setTextSize(tempTextSize);
+        mHighTempPaint.setTextSize(tempTextSize);
+
+        for (int i = 0; i < HOURS.length; i++) {
+            mHourWidths[i] = mHourPaint.measureText(HOURS[i]);
+        }
+        for (int i = 0; i < MINUTES.length; i++) {
+            mMinuteWidths[i] = mMinutePaint.measureText(MINUTES[i]);
+        }
+        mColonWidth = mColonPaint.measureText(COLON);
+        mDateWidth = mDatePaint.measureText(mDateText);
+        measureTemperatures();
+        mTemperatureLayoutDirty = true;
+        mLayerDirty = true;
+    }
+
+    void setBackgroundColor(int color) {
+        mBackgroundPaint.setColor(color);
+        mLayerDirty = true;
+    }
+
+    /**
+     * Formats the date again on the next draw, e.g. because the time zone changed.
+     */
+    void setTimeZone(TimeZone timeZone) {
+        mCalendar.setTimeZone(timeZone);
+        mDateJulianDay = -1;
+    }
+
+    /**
+     * @param icon the weather icon, already scaled, or null to show no weather
+     */
+    void setWeather(String highTemperature, String lowTemperature, Bitmap icon) {
+        mHighTemperature = highTemperature;
+        mLowTemperature = lowTemperature;
+        mWeatherIconBitmap = icon;
+        measureTemperatures();
+        mTemperatureLayoutDirty = true;
+        mLayerDirty = true;
+    }
+
+    private void measureTemperatures() {
+        mHighTemperatureWidth = mHighTempPaint.measureText(mHighTemperature);
+        mLowTemperatureWidth = mLowTempPaint.measureText(mLowTemperature);
+    }
+
+    /**
+     * Frees the layer, it's allocated again on the next draw.
+     */
+    void release() {
+        if (mLayer != null) {
+            mLayer.recycle();
+            mLayer = null;
+            mLayerCanvas = null;
+        }
+    }
+
+    /**
+     * @param now the current time, in milliseconds
+     * @param julianDay the current day, the date is only formatted when it changes
+     * @param showColon false to leave the colon out, for blinking it
+     * @param showWeather whether there is room for the weather, e.g. no peek card is showing
+     */
+    void draw(Canvas canvas, Rect bounds, long now, int julianDay, int hour, int minute,
+              boolean showColon, boolean showWeather) {
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+
+        // Gets the Current Date Text
+        if (julianDay != mDateJulianDay) {
+            mDateJulianDay = julianDay;
+            mDate.setTime(now);
+            mDateText = mDateFormat.format(mDate).toUpperCase(Locale.US);
+            mDateWidth = mDatePaint.measureText(mDateText);
+            mLayerDirty = true;
+        }
+
+        int width = bounds.width();
+        int height = bounds.height();
+        if (mLayer == null || mLayer.getWidth() != width || mLayer.getHeight() != height) {
+            release();
+            mLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mLayerCanvas = new Canvas(mLayer);
+            mTemperatureLayoutDirty = true;
+            mLayerDirty = true;
+        }
+        if (mTemperatureLayoutDirty && mWeatherIconBitmap != null) {
+            mTemperatureLayoutDirty = false;
+            mTemperatureLayout.compute(width / 2f, height / 2f, mWeatherIconBitmap.getWidth(),
+                    mWeatherIconBitmap.getHeight(), mHighTemperatureWidth, mLowTemperatureWidth,
+                    mYOffsetBitmap, mTempMaxXOffset, mTempMinXOffset, mLineHeight);
+        }
+        if (mLayerDirty || showWeather != mLayerShowWeather) {
+            mLayerDirty = false;
+            mLayerShowWeather = showWeather;
+            drawLayer(mLayerCanvas, width, height, showWeather);
+            mLayerDrawCount++;
+        }
+        canvas.drawBitmap(mLayer, bounds.left, bounds.top, null);
+
+        String hourText = HOURS[hour];
+        String minuteText = MINUTES[minute];
+
+        // Gets the total Width of the time so we can center the text on the screen
+        float timeTotalWidth = mHourWidths[hour] + mColonWidth + mMinuteWidths[minute];
+
+        // Calculates the start X position for each text
+        float hoursStartX = bounds.centerX() - timeTotalWidth / 2;
+        float colonStartX = hoursStartX + mHourWidths[hour];
+        float minutesStartX = colonStartX + mColonWidth;
+
+        // Draws all the time components on the screen
+        canvas.drawText(hourText, hoursStartX, bounds.top + mYOffset, mHourPaint);
+        if (showColon) {
+            canvas.drawText(COLON, colonStartX, bounds.top + mYOffset, mColonPaint);
+        }
+        canvas.drawText(minuteText, minutesStartX, bounds.top + mYOffset, mMinutePaint);
+
+        long frameNanos = SystemClock.elapsedRealtimeNanos() - startNanos;
+        mFrameCount++;
+        mTotalFrameNanos += frameNanos;
+        mMaxFrameNanos = Math.max(mMaxFrameNanos, frameNanos);
+    }
+
+    /**
+     * Draws everything but the time, in a width by height area at the origin.
+     */
+    private void drawLayer(Canvas canvas, int width, int height, boolean showWeather) {
+        float centerX = width / 2f;
+        float centerY = height / 2f;
+
+        // Draw the background.
+        canvas.drawRect(0, 0, width, height, mBackgroundPaint);
+
+        float datePosX = centerX - mDateWidth / 2; // This will center the text on the screen
+        float datePosY = mYOffset + mLineHeight;
+
+        // Draws the current date
+        canvas.drawText(mDateText, datePosX, datePosY, mDatePaint);
+
+        // Only render the weather if there is no peek card, so they do not bleed into each other
+        if (!showWeather) {
+            return;
+        }
+
+        // Calculates the divider position
+        float dividerStartX = centerX - mDivisionLineWidth / 2;
+        float dividerStopX = dividerStartX + mDivisionLineWidth;
+        float dividerPosY = centerY + mLineHeight / 2;
+
+        // Draws a very cool Divider Line
+        canvas.drawLine(dividerStartX, dividerPosY, dividerStopX, dividerPosY, mDivisionLinePaint);
+
+        if (mWeatherIconBitmap == null) {
+            return;
+        }
+
+        // Weather Image representation, with the temperatures
+        TemperatureLayout layout = mTemperatureLayout;
+        canvas.drawBitmap(mWeatherIconBitmap, layout.iconX, layout.iconY, null);
+        canvas.drawText(mHighTemperature, layout.highX, layout.textY, mHighTempPaint);
+        canvas.drawText(mLowTemperature, layout.lowX, layout.textY, mLowTempPaint);
+    }
+
+    int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * @return how many frames had to draw the layer again, the rest only drew the time over it.
+     */
+    int getLayerDrawCount() {
+        return mLayerDrawCount;
+    }
+
+    long getAverageFrameMicros() {
+        return mFrameCount == 0 ? 0 : mTotalFrameNanos / mFrameCount / 1000;
+    }
+
+    String getFrameStats() {
+        return mFrameCount + " frames, " + mLayerDrawCount + " layer draws, average "
+                + getAverageFrameMicros() + "us, max " + mMaxFrameNanos / 1000 + "us";
+    }
+
+    void resetFrameStats() {
+        mFrameCount = 0;
+        mLayerDrawCount = 0;
+        mTotalFrameNanos = 0;
+        mMaxFrameNanos = 0;
+    }
+}
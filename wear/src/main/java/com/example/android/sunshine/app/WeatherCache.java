@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.example.android.sunshine.common.Utility;
+import com.example.android.sunshine.common.WearForecastPlanner;
+import com.example.android.sunshine.common.WeatherPayload;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the last forecast the watch received in a file, so the face can show the weather as soon
+ * as it's created instead of waiting for the phone.
+ *
+ * The file holds each forecast slot's payload and the digest of the art sent with it, and the
+ * icon that was last shown, already scaled, so it doesn't need decoding from scratch.  It's
+ * loaded on the calling thread, it's small enough for that, and saved on a background thread.
+ */
+class WeatherCache {
+
+    private static final String TAG = WeatherCache.class.getSimpleName();
+
+    private static final String FILE_NAME = "weather_cache";
+    // Bumped when the file format changes, older files are ignored
+    private static final int VERSION = 1;
+
+    /**
+     * What's cached.
+     */
+    static class Snapshot {
+        final WeatherPayload[] days = new WeatherPayload[WearForecastPlanner.SLOTS];
+        // The digest of the art the phone sent with each day, or null for the bundled art
+        final String[] artDigests = new String[WearForecastPlanner.SLOTS];
+        // The icon last shown, with its IconDecoder key, or null for none
+        String iconKey;
+        Bitmap icon;
+    }
+
+    private final File mFile;
+    // Lives as long as the process, like the ForecastRepository holding this cache
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    WeatherCache(Context context) {
+        mFile = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    /**
+     * @return what was last saved, or null if nothing was or it can't be read
+     */
+    Snapshot load() {
+        DataInputStream in;
+        try {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+
+        try {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            Snapshot snapshot = new Snapshot();
+            for (int slot = 0; slot < WearForecastPlanner.SLOTS; slot++) {
+                byte[] payload = new byte[in.readInt()];
+                in.readFully(payload);
+                snapshot.days[slot] = WeatherPayload.fromBytes(payload);
+                String digest = in.readUTF();
+                snapshot.artDigests[slot] = digest.isEmpty() ? null : digest;
+            }
+
+            String iconKey = in.readUTF();
+            byte[] icon = new byte[in.readInt()];
+            in.readFully(icon);
+            if (!iconKey.isEmpty()) {
+                snapshot.iconKey = iconKey;
+                snapshot.icon = BitmapFactory.decodeByteArray(icon, 0, icon.length);
+            }
+            return snapshot;
+        } catch (IOException e) {
+            Log.e(TAG, "Couldn't load the weather cache", e);
+            return null;
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Saves the snapshot in the background.  The snapshot mustn't be changed afterwards.
+     */
+    void save(final Snapshot snapshot) {
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // Written next to the file and renamed over it, so it's never half written
+                File tempFile = new File(mFile.getPath() + ".tmp");
+                try {
+                    write(snapshot, tempFile);
+                    if (!tempFile.renameTo(mFile)) {
+                        Log.e(TAG, "Couldn't replace the weather cache");
+                    }
+                } catch (IOException e) {
+                    Log.e(TAG, "Couldn't save the weather cache", e);
+                }
+            }
+        });
+    }
+
+    private static void write(Snapshot snapshot, File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(VERSION);
+            for (int slot = 0; slot < WearForecastPlanner.SLOTS; slot++) {
+                WeatherPayload day = snapshot.days[slot];
+                byte[] payload = day == null ? new byte[0] : day.toBytes();
+                out.writeInt(payload.length);
+                out.write(payload);
+                String digest = snapshot.artDigests[slot];
+                out.writeUTF(digest == null ? "" : digest);
+            }
+
+            byte[] icon = snapshot.icon == null ? new byte[0] : Utility.compressBitmap(snapshot.icon);
+            out.writeUTF(snapshot.icon == null ? "" : snapshot.iconKey);
+            out.writeInt(icon.length);
+            out.write(icon);
+        } finally {
+            out.close();
+        }
+    }
+}
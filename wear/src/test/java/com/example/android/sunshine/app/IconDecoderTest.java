@@ -0,0 +1,24 @@
+package com.example.android.sunshine.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IconDecoderTest {
+
+    @Test
+    public void samplesDownByPowersOfTwo() throws Exception {
+        assertEquals(2, IconDecoder.calculateInSampleSize(96, 96, 48));
+        assertEquals(2, IconDecoder.calculateInSampleSize(100, 100, 48));
+        assertEquals(8, IconDecoder.calculateInSampleSize(400, 400, 48));
+    }
+
+    @Test
+    public void neverSamplesBelowTheSize() throws Exception {
+        assertEquals(1, IconDecoder.calculateInSampleSize(95, 95, 48));
+        assertEquals(1, IconDecoder.calculateInSampleSize(48, 48, 48));
+        assertEquals(1, IconDecoder.calculateInSampleSize(20, 20, 48));
+        // The shorter side decides
+        assertEquals(4, IconDecoder.calculateInSampleSize(400, 200, 48));
+    }
+}
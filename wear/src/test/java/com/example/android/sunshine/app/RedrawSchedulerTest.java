@@ -0,0 +1,68 @@
+package com.example.android.sunshine.app;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RedrawSchedulerTest {
+
+    static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+
+    static class FakeClock implements RedrawScheduler.Clock {
+        long now;
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private FakeClock mClock;
+    private RedrawScheduler mScheduler;
+
+    @Before
+    public void setUp() throws Exception {
+        mClock = new FakeClock();
+        // Somewhere in the middle of a minute
+        mClock.now = 1455000000000L + 12345;
+        mScheduler = new RedrawScheduler(mClock);
+    }
+
+    /**
+     * Runs the scheduler for an hour, like the engine's handler does.
+     * @return the number of redraws
+     */
+    private int redrawsInAnHour() {
+        long end = mClock.now + HOUR_MS;
+        int redraws = 0;
+        while (true) {
+            mClock.now += mScheduler.getDelayMillis();
+            if (mClock.now > end) {
+                return redraws;
+            }
+            redraws++;
+        }
+    }
+
+    @Test
+    public void redrawsOnceAMinute() throws Exception {
+        assertEquals(60, redrawsInAnHour());
+    }
+
+    @Test
+    public void redrawsAreOnTheMinute() throws Exception {
+        mClock.now += mScheduler.getDelayMillis();
+        assertEquals(0, mClock.now % RedrawScheduler.MINUTE_MS);
+        assertEquals(RedrawScheduler.MINUTE_MS, mScheduler.getDelayMillis());
+    }
+
+    @Test
+    public void secondsModeRedrawsEverySecond() throws Exception {
+        mScheduler.setSecondsMode(true);
+        assertEquals(3600, redrawsInAnHour());
+        assertEquals(0, mClock.now % RedrawScheduler.SECOND_MS);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.android.sunshine.app;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TemperatureLayoutTest {
+
+    static final float DELTA = 0.001f;
+
+    // The dimensions at hdpi, where a dp is 1.5 pixels
+    static final int FACE_SIZE = 320;
+    static final int ICON_SIZE = 75;
+    static final float HIGH_X_OFFSET = 15;
+    static final float LOW_X_OFFSET = 10.5f;
+    static final float ICON_Y_OFFSET_ROUND = 22.5f;
+    static final float ICON_Y_OFFSET_SQUARE = 15;
+    static final float LINE_HEIGHT_ROUND = 37.5f;
+    static final float LINE_HEIGHT_SQUARE = 30;
+
+    static final float HIGH_WIDTH = 52;
+    static final float LOW_WIDTH = 41;
+
+    private static TemperatureLayout layout(float iconYOffset, float lineHeight) {
+        TemperatureLayout layout = new TemperatureLayout();
+        layout.compute(FACE_SIZE / 2f, FACE_SIZE / 2f, ICON_SIZE, ICON_SIZE, HIGH_WIDTH, LOW_WIDTH,
+                iconYOffset, HIGH_X_OFFSET, LOW_X_OFFSET, lineHeight);
+        return layout;
+    }
+
+    private static void assertCenteredRow(TemperatureLayout layout) {
+        assertEquals(layout.iconX + ICON_SIZE + HIGH_X_OFFSET, layout.highX, DELTA);
+        assertEquals(layout.highX + HIGH_WIDTH + LOW_X_OFFSET, layout.lowX, DELTA);
+        // As much room left of the icon as right of the low temperature
+        float right = FACE_SIZE - (layout.lowX + LOW_WIDTH);
+        assertEquals(layout.iconX, right, DELTA);
+    }
+
+    @Test
+    public void roundLayout() throws Exception {
+        TemperatureLayout layout = layout(ICON_Y_OFFSET_ROUND, LINE_HEIGHT_ROUND);
+        assertCenteredRow(layout);
+        assertEquals(FACE_SIZE / 2f + ICON_Y_OFFSET_ROUND, layout.iconY, DELTA);
+        // (int) 182.5 + 75 / 2 + (int) 37.5 / 2
+        assertEquals(182 + 37 + 18, layout.textY, DELTA);
+    }
+
+    @Test
+    public void squareLayout() throws Exception {
+        TemperatureLayout layout = layout(ICON_Y_OFFSET_SQUARE, LINE_HEIGHT_SQUARE);
+        assertCenteredRow(layout);
+        assertEquals(FACE_SIZE / 2f + ICON_Y_OFFSET_SQUARE, layout.iconY, DELTA);
+        assertEquals(175 + 37 + 15, layout.textY, DELTA);
+    }
+
+    @Test
+    public void recomputingReplacesTheLayout() throws Exception {
+        TemperatureLayout layout = layout(ICON_Y_OFFSET_ROUND, LINE_HEIGHT_ROUND);
+        layout.compute(FACE_SIZE / 2f, FACE_SIZE / 2f, ICON_SIZE, ICON_SIZE, HIGH_WIDTH, LOW_WIDTH,
+                ICON_Y_OFFSET_SQUARE, HIGH_X_OFFSET, LOW_X_OFFSET, LINE_HEIGHT_SQUARE);
+        assertEquals(layout(ICON_Y_OFFSET_SQUARE, LINE_HEIGHT_SQUARE).textY, layout.textY, DELTA);
+    }
+}